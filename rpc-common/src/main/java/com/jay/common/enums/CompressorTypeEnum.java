@@ -12,7 +12,27 @@ public enum CompressorTypeEnum {
     /**
      * GZIP
      */
-    GZIP((byte)1, "gzip");
+    GZIP((byte)1, "gzip"),
+    /**
+     * LZ4
+     */
+    LZ4((byte)2, "lz4"),
+    /**
+     * Zstd
+     */
+    ZSTD((byte)3, "zstd"),
+    /**
+     * Snappy
+     */
+    SNAPPY((byte)4, "snappy"),
+    /**
+     * 连接级deflate压缩流，同一条连接上的消息共用压缩上下文
+     */
+    DEFLATE_STREAM((byte)5, "deflate-stream"),
+    /**
+     * 使用预训练字典的Zstd
+     */
+    ZSTD_DICT((byte)6, "zstd-dict");
 
     public byte code;
     public String type;
@@ -30,4 +50,13 @@ public enum CompressorTypeEnum {
         }
         return null;
     }
+
+    public static CompressorTypeEnum getByType(String type){
+        for(CompressorTypeEnum typeEnum : CompressorTypeEnum.values()){
+            if(typeEnum.type.equalsIgnoreCase(type)){
+                return typeEnum;
+            }
+        }
+        return null;
+    }
 }
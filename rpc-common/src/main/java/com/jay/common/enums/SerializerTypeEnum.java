@@ -9,7 +9,19 @@ public enum SerializerTypeEnum {
     /**
      * protostuff
      */
-    PROTOSTUFF((byte)1, "protostuff");
+    PROTOSTUFF((byte)1, "protostuff"),
+    /**
+     * kryo
+     */
+    KRYO((byte)2, "kryo"),
+    /**
+     * hessian2
+     */
+    HESSIAN2((byte)3, "hessian2"),
+    /**
+     * 基本类型参数快速序列化，其他数据使用protostuff
+     */
+    PRIMITIVE((byte)4, "primitive");
 
     public byte code;
     public String type;
@@ -27,4 +39,13 @@ public enum SerializerTypeEnum {
         }
         return null;
     }
+
+    public static SerializerTypeEnum getByType(String type){
+        for(SerializerTypeEnum enums : SerializerTypeEnum.values()){
+            if(enums.type.equalsIgnoreCase(type)){
+                return enums;
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,29 @@
+package com.jay.rpc.annotation;
+
+import com.jay.rpc.client.RouteKeyExtractor;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ *     在接口方法的参数上添加该注解，声明该参数为路由key
+ *     客户端把路由key传给负载均衡器，hash类负载均衡器（consistent-hash、bounded-hash）
+ *     根据路由key选择地址，同一个key的请求落在同一台服务器上
+ *
+ *     参数本身不适合作为key时，通过extractor从参数中提取，如从DTO中取出用户ID
+ * </p>
+ * @author Jay
+ * @date 2021/12/6
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface RouteKey {
+    /**
+     * 路由key提取器，默认使用参数本身
+     * @return Class
+     */
+    Class<? extends RouteKeyExtractor> extractor() default RouteKeyExtractor.Identity.class;
+}
@@ -1,24 +1,35 @@
 package com.jay.rpc.client;
 
+import com.jay.rpc.transport.TransportType;
+import com.jay.rpc.transport.handler.FlushBatchHandler;
 import com.jay.rpc.transport.handler.RpcDecoder;
 import com.jay.rpc.transport.handler.RpcEncoder;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.pool.*;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>
  *  连接Provider
- *  记录地址和对应的连接池
+ *  每个地址维持少量长连接，多个请求复用同一条连接（多路复用）
+ *  请求和响应通过报文头部的requestId关联，发送请求时不需要从连接池获取、释放连接
  * </p>
  *
  * @author Jay
@@ -26,49 +37,156 @@ import java.net.InetSocketAddress;
  **/
 @Component
 @Slf4j
-public class ChannelProvider extends AbstractChannelPoolMap<InetSocketAddress, SimpleChannelPool> {
-    private final NioEventLoopGroup group = new NioEventLoopGroup();
+public class ChannelProvider {
+    private EventLoopGroup group;
+    private TransportType transport;
+
+    /**
+     * 传输层类型，auto/epoll/nio
+     */
+    @Value("${rpc.transport.type:auto}")
+    private String transportType;
+    /**
+     * 客户端IO线程数，0表示使用Netty默认值
+     */
+    @Value("${rpc.client.io-threads:0}")
+    private int ioThreads;
 
     @Resource
     private UnfinishedRequestHolder unfinishedRequestHolder;
 
-    @Override
-    protected SimpleChannelPool newPool(InetSocketAddress address) {
-        // channel bootstrap
-        Bootstrap bootstrap = new Bootstrap()
-                .group(group)
-                .channel(NioSocketChannel.class)
-                .option(ChannelOption.SO_KEEPALIVE, true)
-                .remoteAddress(address);
-
-        // simple连接池，无连接上限，无等待上限
-        return new SimpleChannelPool(bootstrap, new RpcChannelPoolHandler());
+    /**
+     * 每个地址的连接数量
+     */
+    @Value("${rpc.client.connections-per-address:2}")
+    private int connectionsPerAddress;
+
+    /**
+     * 是否开启flush合并
+     */
+    @Value("${rpc.transport.flush-batch.enable:false}")
+    private boolean enableFlushBatch;
+    /**
+     * 单次flush最多消息数
+     */
+    @Value("${rpc.transport.flush-batch.max-batch:64}")
+    private int flushMaxBatch;
+    /**
+     * flush最长延迟，微秒
+     */
+    @Value("${rpc.transport.flush-batch.max-delay-micros:50}")
+    private long flushMaxDelayMicros;
+
+    /**
+     * 压缩阈值，数据部分小于该字节数时不压缩
+     */
+    @Value("${rpc.compress.threshold:1024}")
+    private int compressThreshold;
+
+    /**
+     * 地址-连接组
+     */
+    private final ConcurrentHashMap<InetSocketAddress, MultiplexChannels> channelMap = new ConcurrentHashMap<>(16);
+
+    @PostConstruct
+    public void init(){
+        transport = TransportType.select(transportType);
+        group = transport.newEventLoopGroup(ioThreads, "rpc-client");
+        log.info("RPC客户端传输层：{}", transport);
     }
 
     /**
-     * 连接池处理器
-     * 处理连接释放、获取、创建事件
+     * 获取地址对应的复用连接
+     * 轮询选择该地址的连接，连接不存在或已断开时重新建立
+     * @param address 地址
+     * @return Channel
+     * @throws InterruptedException e
      */
-    class RpcChannelPoolHandler implements ChannelPoolHandler {
-        @Override
-        public void channelReleased(Channel ch){
-            // 释放channel时清空
-            ch.flush();
+    public Channel get(InetSocketAddress address) throws InterruptedException {
+        MultiplexChannels channels = channelMap.get(address);
+        if(channels == null){
+            channels = channelMap.computeIfAbsent(address, MultiplexChannels::new);
         }
+        return channels.next();
+    }
 
-        @Override
-        public void channelAcquired(Channel ch) {
-            // channel获取成功
+    /**
+     * 某个地址的连接组
+     */
+    class MultiplexChannels {
+        private final Bootstrap bootstrap;
+        private final AtomicReferenceArray<Channel> channels;
+        /**
+         * 建立连接时持有的锁
+         * 使用ReentrantLock而不是synchronized，虚拟线程在等待连接建立时不会pin住载体线程
+         */
+        private final ReentrantLock[] locks;
+        private final AtomicInteger index = new AtomicInteger(0);
+
+        MultiplexChannels(InetSocketAddress address){
+            int size = Math.max(1, connectionsPerAddress);
+            this.channels = new AtomicReferenceArray<>(size);
+            this.locks = new ReentrantLock[size];
+            for(int i = 0; i < size; i++){
+                locks[i] = new ReentrantLock();
+            }
+            // channel bootstrap
+            this.bootstrap = new Bootstrap()
+                    .group(group)
+                    .channel(transport.channelClass())
+                    .option(ChannelOption.SO_KEEPALIVE, true)
+                    .remoteAddress(address)
+                    .handler(new RpcChannelInitializer());
+            transport.configureClient(bootstrap);
+        }
+
+        Channel next() throws InterruptedException {
+            int slot = (index.getAndIncrement() & Integer.MAX_VALUE) % channels.length();
+            Channel channel = channels.get(slot);
+            if(channel != null && channel.isActive()){
+                return channel;
+            }
+            // 连接不可用，同一个槽位只允许一个线程建立连接
+            ReentrantLock lock = locks[slot];
+            lock.lock();
+            try{
+                channel = channels.get(slot);
+                if(channel == null || !channel.isActive()){
+                    channel = connect(slot);
+                }
+                return channel;
+            }finally {
+                lock.unlock();
+            }
+        }
+
+        private Channel connect(int slot) throws InterruptedException {
+            ChannelFuture future = bootstrap.connect().sync();
+            Channel channel = future.channel();
+            channels.set(slot, channel);
+            // 连接断开时清空槽位，下次使用时重连
+            channel.closeFuture().addListener(f -> channels.compareAndSet(slot, channel, null));
+            log.info("建立复用连接：{}，槽位：{}", channel.remoteAddress(), slot);
+            return channel;
         }
+    }
 
+    /**
+     * 连接初始化
+     * 创建channel时添加handler
+     */
+    class RpcChannelInitializer extends ChannelInitializer<SocketChannel> {
         @Override
-        public void channelCreated(Channel ch) {
-            // 创建channel时，添加handler
+        protected void initChannel(SocketChannel ch) {
             ChannelPipeline pipeline = ch.pipeline();
+            // flush合并，放在编码器之前
+            if(enableFlushBatch){
+                pipeline.addLast(new FlushBatchHandler(flushMaxBatch, flushMaxDelayMicros, TimeUnit.MICROSECONDS));
+            }
             /*
                 编解码器
              */
-            pipeline.addLast(new RpcEncoder());
+            pipeline.addLast(new RpcEncoder(compressThreshold));
             pipeline.addLast(new RpcDecoder());
             // 客户端handler
             pipeline.addLast(new ClientHandler(unfinishedRequestHolder));
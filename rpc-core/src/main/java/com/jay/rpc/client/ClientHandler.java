@@ -1,15 +1,25 @@
 package com.jay.rpc.client;
 
+import com.jay.common.enums.SerializerTypeEnum;
 import com.jay.rpc.constants.RpcConstants;
+import com.jay.rpc.entity.MethodTable;
 import com.jay.rpc.entity.RpcMessage;
 import com.jay.rpc.entity.RpcResponse;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.AttributeKey;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * <p>
  *  客户端处理器，处理收到的response
+ *  连接建立后向服务端请求方法表，收到后将 方法签名-方法ID 记录在channel属性中
+ *  服务端不支持方法表时不会返回，该连接上的请求继续携带完整的方法信息
  * </p>
  *
  * @author Jay
@@ -22,6 +32,11 @@ public class ClientHandler extends SimpleChannelInboundHandler<RpcMessage> {
      */
     private final UnfinishedRequestHolder unfinishedRequestHolder;
 
+    /**
+     * 连接协商的方法表：方法签名 -> 方法ID
+     */
+    public static final AttributeKey<Map<String, Integer>> METHOD_IDS = AttributeKey.valueOf("rpc.methodIds");
+
     public ClientHandler(UnfinishedRequestHolder unfinishedRequestHolder) {
         this.unfinishedRequestHolder = unfinishedRequestHolder;
     }
@@ -32,9 +47,38 @@ public class ClientHandler extends SimpleChannelInboundHandler<RpcMessage> {
         // 消息类型为Response
         if(message.getMessageType() == RpcConstants.TYPE_RESPONSE){
             RpcResponse response = (RpcResponse)message.getData();
-            log.info("收到response：id={}", response.getRequestId());
-            // 完成未完成请求
-            unfinishedRequestHolder.complete(response);
+            // 通过头部requestId完成未完成请求
+            unfinishedRequestHolder.complete(message.getRequestId(), response);
+        }
+        // 方法表
+        else if(message.getMessageType() == RpcConstants.TYPE_METHOD_TABLE_RESPONSE){
+            MethodTable table = (MethodTable) message.getData();
+            List<String> signatures = table == null || table.getSignatures() == null ? Collections.emptyList() : table.getSignatures();
+            Map<String, Integer> methodIds = new HashMap<>(signatures.size() * 2);
+            for(int i = 0; i < signatures.size(); i++){
+                methodIds.put(signatures.get(i), i);
+            }
+            channelHandlerContext.channel().attr(METHOD_IDS).set(Collections.unmodifiableMap(methodIds));
+            log.info("方法表协商完成，服务端：{}，方法数：{}", channelHandlerContext.channel().remoteAddress(), methodIds.size());
         }
     }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+        // 请求服务端方法表
+        RpcMessage message = RpcMessage.builder()
+                .messageType(RpcConstants.TYPE_METHOD_TABLE_REQUEST)
+                .serializer(SerializerTypeEnum.PROTOSTUFF.code)
+                .compress(RpcConstants.COMPRESS_OFF)
+                .build();
+        ctx.writeAndFlush(message);
+        super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 连接断开，该连接上的未完成请求全部失败
+        unfinishedRequestHolder.failChannel(ctx.channel());
+        super.channelInactive(ctx);
+    }
 }
@@ -0,0 +1,115 @@
+package com.jay.rpc.client;
+
+import com.jay.rpc.annotation.RouteKey;
+import com.jay.rpc.entity.MethodTable;
+import com.jay.rpc.transport.serialize.primitive.PrimitiveSerializer;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+
+/**
+ * <p>
+ *  代理方法元数据
+ *  每个接口方法解析一次，缓存在RpcProxy中
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/6
+ **/
+class MethodMetadata {
+    /**
+     * 方法签名，用于查找连接协商的方法ID
+     */
+    private final String methodKey;
+    /**
+     * 路由key参数下标，-1表示没有
+     */
+    private final int routeKeyIndex;
+    private final RouteKeyExtractor routeKeyExtractor;
+    /**
+     * 参数类型是否都可以快速序列化
+     */
+    private final boolean primitiveParameters;
+
+    MethodMetadata(Class<?> service, Method method){
+        this.methodKey = MethodTable.signature(service, method.getName(), method.getParameterTypes());
+        int index = -1;
+        RouteKeyExtractor extractor = null;
+        Annotation[][] annotations = method.getParameterAnnotations();
+        for(int i = 0; i < annotations.length && index < 0; i++){
+            for (Annotation annotation : annotations[i]) {
+                if(annotation instanceof RouteKey){
+                    index = i;
+                    Class<? extends RouteKeyExtractor> extractorType = ((RouteKey) annotation).extractor();
+                    checkRouteKeyType(method, method.getParameterTypes()[i], extractorType);
+                    extractor = newExtractor(extractorType);
+                    break;
+                }
+            }
+        }
+        this.routeKeyIndex = index;
+        this.routeKeyExtractor = extractor;
+        boolean primitive = true;
+        for(Class<?> parameterType : method.getParameterTypes()){
+            primitive &= PrimitiveSerializer.supports(parameterType);
+        }
+        this.primitiveParameters = primitive;
+    }
+
+    /**
+     * 检查路由key类型，hash不稳定的类型在创建代理时报错，不在调用时静默地路由到不同地址
+     * 默认提取器要求参数类型可以作为路由key；自定义提取器声明了具体返回类型时检查返回类型，否则在调用时检查
+     */
+    private static void checkRouteKeyType(Method method, Class<?> parameterType, Class<? extends RouteKeyExtractor> extractorType){
+        Class<?> keyType;
+        if(extractorType == RouteKeyExtractor.Identity.class){
+            keyType = parameterType;
+        }
+        else{
+            try{
+                keyType = extractorType.getMethod("extract", Object.class).getReturnType();
+            }catch (NoSuchMethodException e){
+                throw new IllegalArgumentException("无法解析路由key提取器：" + extractorType, e);
+            }
+            if(keyType == Object.class){
+                return;
+            }
+        }
+        if(!RouteKeyExtractor.isSupportedType(keyType)){
+            throw new IllegalArgumentException("@RouteKey类型不支持：" + keyType.getName() + "，方法：" + method
+                    + "，需要指定RouteKeyExtractor提取String或Number");
+        }
+    }
+
+    private static RouteKeyExtractor newExtractor(Class<? extends RouteKeyExtractor> type){
+        try{
+            return type.getDeclaredConstructor().newInstance();
+        }catch (ReflectiveOperationException e){
+            throw new IllegalArgumentException("无法创建路由key提取器：" + type, e);
+        }
+    }
+
+    String getMethodKey() {
+        return methodKey;
+    }
+
+    boolean isPrimitiveParameters() {
+        return primitiveParameters;
+    }
+
+    /**
+     * 从调用参数中取出路由key
+     * @param args 参数
+     * @return 路由key，没有时返回null
+     */
+    Object routeKey(Object[] args){
+        if(routeKeyIndex < 0 || args == null){
+            return null;
+        }
+        Object key = routeKeyExtractor.extract(args[routeKeyIndex]);
+        if(key != null && !RouteKeyExtractor.isSupportedType(key.getClass())){
+            throw new IllegalArgumentException("路由key类型不支持：" + key.getClass().getName() + "，提取器：" + routeKeyExtractor.getClass().getName());
+        }
+        return key;
+    }
+}
@@ -0,0 +1,44 @@
+package com.jay.rpc.client;
+
+/**
+ * <p>
+ *  路由key提取器
+ *  实现类需要有无参构造方法，每个接口方法创建一个实例
+ *  路由key必须是String、Number、枚举、Character或Boolean，这些类型在不同客户端、不同进程中的hash一致；
+ *  其他类型（如没有覆盖hashCode的DTO）需要通过提取器取出其中的String或Number
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/6
+ **/
+public interface RouteKeyExtractor {
+    /**
+     * 从参数中提取路由key
+     * @param argument 带有@RouteKey的参数
+     * @return 路由key，null表示不使用路由key
+     */
+    Object extract(Object argument);
+
+    /**
+     * 类型是否可以作为路由key
+     * @param type 类型
+     * @return boolean
+     */
+    static boolean isSupportedType(Class<?> type){
+        if(type.isPrimitive()){
+            return type != void.class;
+        }
+        return CharSequence.class.isAssignableFrom(type) || Number.class.isAssignableFrom(type) || type.isEnum()
+                || type == Character.class || type == Boolean.class;
+    }
+
+    /**
+     * 使用参数本身作为路由key
+     */
+    class Identity implements RouteKeyExtractor {
+        @Override
+        public Object extract(Object argument) {
+            return argument;
+        }
+    }
+}
@@ -1,23 +1,26 @@
 package com.jay.rpc.client;
 
+import com.jay.common.enums.CompressorTypeEnum;
 import com.jay.common.enums.SerializerTypeEnum;
 import com.jay.common.extention.ExtensionLoader;
 import com.jay.rpc.constants.RpcConstants;
 import com.jay.rpc.entity.RpcMessage;
 import com.jay.rpc.entity.RpcRequest;
 import com.jay.rpc.entity.RpcResponse;
+import com.jay.rpc.loadbalance.EndpointStats;
 import com.jay.rpc.loadbalance.LoadBalancer;
-import com.jay.rpc.registry.Registry;
 import io.netty.channel.*;
-import io.netty.util.concurrent.Future;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
 import java.net.InetSocketAddress;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -32,10 +35,10 @@ import java.util.concurrent.atomic.AtomicInteger;
 @Slf4j
 public class RpcClient {
     /**
-     * 注册中心
+     * 服务地址目录
      */
     @Resource
-    private Registry registry;
+    private ServiceDirectory serviceDirectory;
     /**
      * 未完成请求缓存
      */
@@ -46,66 +49,201 @@ public class RpcClient {
      */
     private final AtomicInteger idProvider = new AtomicInteger(0);
     /**
-     * 连接池
+     * 复用连接
      */
     @Resource
     private ChannelProvider channelProvider;
 
+    @Resource
+    private Environment environment;
+    /**
+     * 默认负载均衡器，可以通过rpc.client.service.{服务名}.load-balancer为单个服务配置
+     */
+    @Value("${rpc.client.load-balancer:random}")
+    private String defaultLoadBalancer;
+    /**
+     * 默认压缩方式：gzip/lz4/zstd/zstd-dict/snappy/deflate-stream/none，可以通过rpc.client.service.{服务名}.compressor为单个服务配置
+     */
+    @Value("${rpc.client.compressor:gzip}")
+    private String defaultCompressor;
+    /**
+     * 默认序列化方式：protostuff/kryo/hessian2，可以通过rpc.client.service.{服务名}.serializer为单个服务配置
+     */
+    @Value("${rpc.client.serializer:protostuff}")
+    private String defaultSerializer;
+    /**
+     * 使用protostuff的服务，参数都是基本类型、String、byte[]的方法改用快速序列化
+     */
+    @Value("${rpc.client.primitive-fast-path:true}")
+    private boolean primitiveFastPath;
+    /**
+     * 服务名 - 调用配置
+     */
+    private final ConcurrentHashMap<String, ServiceOptions> serviceOptions = new ConcurrentHashMap<>(16);
+
     /**
      * 发送rpc请求
      * @param request 请求
+     * @param applicationName 服务名
+     * @param timeoutMillis 超时时间，超时后future异常完成
+     * @return response
+     * @throws Exception 抛出异常，由调用者捕获
+     */
+    public CompletableFuture<RpcResponse> send(RpcRequest request, String applicationName, long timeoutMillis) throws Exception{
+        return send(request, applicationName, timeoutMillis, null);
+    }
+
+    /**
+     * 发送rpc请求，指定路由key
+     * @param request 请求
+     * @param applicationName 服务名
+     * @param timeoutMillis 超时时间，超时后future异常完成
+     * @param routeKey 路由key，hash类负载均衡器根据key选择地址，null表示没有
      * @return response
      * @throws Exception 抛出异常，由调用者捕获
      */
-    public CompletableFuture<RpcResponse> send(RpcRequest request, String applicationName) throws Exception{
-        // 从注册中心找到address
-        List<InetSocketAddress> addresses = registry.getServiceAddress(applicationName);
+    public CompletableFuture<RpcResponse> send(RpcRequest request, String applicationName, long timeoutMillis, Object routeKey) throws Exception{
+        // 从本地地址目录获取address，不访问注册中心
+        List<InetSocketAddress> addresses = serviceDirectory.getAddresses(applicationName);
+        ServiceOptions options = getServiceOptions(applicationName);
         // 获取负载均衡器
-        LoadBalancer loadBalancer = ExtensionLoader.getExtensionLoader(LoadBalancer.class).getExtension("random");
+        LoadBalancer loadBalancer = options.getLoadBalancer();
+        // 请求ID，同时用于关联响应
+        int requestId = idProvider.getAndIncrement();
         // 负载均衡器选择地址
-        InetSocketAddress address = loadBalancer.selectAddress(addresses, applicationName, request.getRequestId());
+        InetSocketAddress address = loadBalancer.selectAddress(addresses, applicationName, requestId, routeKey);
+        // 记录在途请求数和响应时间，供负载均衡器使用
+        EndpointStats stats = EndpointStats.of(address);
+        long startNanos = stats.begin();
         // 获取channel
-        Channel channel = getChannel(address);
+        Channel channel;
+        try{
+            channel = getChannel(address);
+        }catch (Exception e){
+            // 连接失败按失败请求记录
+            stats.end(startNanos, true);
+            throw e;
+        }
+        // 该连接协商过方法表时，只传输方法ID
+        compactRequest(request, channel);
         // 封装RpcMessage
         RpcMessage message = RpcMessage.builder().data(request)
                 // 消息类型
                 .messageType(RpcConstants.TYPE_REQUEST)
-                // 压缩方式
-                .compress((byte) 1)
+                // 压缩方式，数据部分小于压缩阈值时不压缩
+                .compress(options.getCompress())
                 // 请求ID
-                .requestId(idProvider.getAndIncrement())
+                .requestId(requestId)
                 // 序列化方式
-                .serializer(SerializerTypeEnum.PROTOSTUFF.code)
+                .serializer(selectSerializer(request, options))
                 .build();
 
         CompletableFuture<RpcResponse> result = new CompletableFuture<>();
+        // 发送失败、超时、连接断开时future异常完成，按失败记录
+        result.whenComplete((response, error) -> stats.end(startNanos, error != null));
+        // 发送前加入未完成请求缓存，避免响应先于listener到达
+        unfinishedRequestHolder.put(requestId, new UnfinishedRequestHolder.UnfinishedRequest(result, channel, address), timeoutMillis);
         // 发送请求，使用listener监听发送状态
         channel.writeAndFlush(message).addListener((ChannelFutureListener)future->{
             // 请求发送成功
            if(future.isSuccess()){
-               log.info("请求发送成功，消息Id：{}，requestId：{}", message.getRequestId(), request.getRequestId());
-               // 加入到未完成请求缓存
-               unfinishedRequestHolder.put(request.getRequestId(), new UnfinishedRequestHolder.UnfinishedRequest(result, channel, address));
+               log.info("请求发送成功，requestId：{}", requestId);
            }
            else{
-               // 请求发送失败，future异常完成
-               result.completeExceptionally(new RuntimeException("failed to send request"));
-               // 释放连接池的channel
-               channelProvider.get(address).release(channel);
+               // 请求发送失败，移除缓存，future异常完成
+               unfinishedRequestHolder.remove(requestId);
+               result.completeExceptionally(new RuntimeException("failed to send request", future.cause()));
            }
         });
         return result;
     }
 
+    /**
+     * 获取服务的调用配置
+     * @param applicationName 服务名
+     * @return ServiceOptions
+     */
+    private ServiceOptions getServiceOptions(String applicationName){
+        ServiceOptions options = serviceOptions.get(applicationName);
+        if(options == null){
+            options = serviceOptions.computeIfAbsent(applicationName, this::createServiceOptions);
+        }
+        return options;
+    }
+
+    private ServiceOptions createServiceOptions(String applicationName){
+        String prefix = "rpc.client.service." + applicationName + ".";
+        String loadBalancer = environment.getProperty(prefix + "load-balancer", defaultLoadBalancer);
+        String compressor = environment.getProperty(prefix + "compressor", defaultCompressor);
+        String serializer = environment.getProperty(prefix + "serializer", defaultSerializer);
+        log.info("服务调用配置：{}，负载均衡：{}，压缩：{}，序列化：{}", applicationName, loadBalancer, compressor, serializer);
+        return ServiceOptions.builder()
+                .loadBalancer(ExtensionLoader.getExtensionLoader(LoadBalancer.class).getExtension(loadBalancer))
+                .compress(compressCode(compressor))
+                .serializer(serializerCode(serializer))
+                .build();
+    }
+
+    /**
+     * 选择请求的序列化方式
+     * 参数都是基本类型且已协商方法ID时，请求只需要写入方法ID和参数值，响应中的异常等其他数据仍使用protostuff
+     * @param request 请求
+     * @param options 服务调用配置
+     * @return 序列化方式
+     */
+    private byte selectSerializer(RpcRequest request, ServiceOptions options){
+        if(primitiveFastPath && options.getSerializer() == SerializerTypeEnum.PROTOSTUFF.code
+                && request.isPrimitiveParameters() && request.getMethodId() != null){
+            return SerializerTypeEnum.PRIMITIVE.code;
+        }
+        return options.getSerializer();
+    }
+
+    private static byte serializerCode(String serializer){
+        SerializerTypeEnum type = SerializerTypeEnum.getByType(serializer);
+        if(type == null){
+            throw new IllegalArgumentException("unknown serializer: " + serializer);
+        }
+        return type.code;
+    }
+
+    private static byte compressCode(String compressor){
+        if("none".equalsIgnoreCase(compressor)){
+            return RpcConstants.COMPRESS_OFF;
+        }
+        CompressorTypeEnum type = CompressorTypeEnum.getByType(compressor);
+        if(type == null){
+            throw new IllegalArgumentException("unknown compressor: " + compressor);
+        }
+        return type.code;
+    }
+
+    /**
+     * 连接上已协商方法表时，用方法ID代替接口、方法名和参数类型
+     * @param request 请求
+     * @param channel 连接
+     */
+    private void compactRequest(RpcRequest request, Channel channel){
+        Map<String, Integer> methodIds = channel.attr(ClientHandler.METHOD_IDS).get();
+        if(methodIds == null || request.getMethodKey() == null){
+            return;
+        }
+        Integer methodId = methodIds.get(request.getMethodKey());
+        if(methodId != null){
+            request.setMethodId(methodId);
+            request.setTargetClass(null);
+            request.setMethodName(null);
+            request.setParameterTypes(null);
+        }
+    }
+
     /**
      * 获取复用channel
      * @param address 地址
      * @return Channel
-     * @throws ExecutionException e
      * @throws InterruptedException e
      */
-    private Channel getChannel(InetSocketAddress address) throws ExecutionException, InterruptedException {
-        Future<Channel> future = channelProvider.get(address).acquire();
-        return future.get();
+    private Channel getChannel(InetSocketAddress address) throws InterruptedException {
+        return channelProvider.get(address);
     }
 }
@@ -6,18 +6,22 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.Resource;
+import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
 import java.util.HashMap;
-import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 /**
  * <p>
  *    RPC 代理工具
  *    获取目标接口的代理对象，代理对象的方法中通过发送RPC请求获取结果
  *    将代理对象单例化，避免重复创建同一个接口的代理对象造成的开销
+ *    接口方法返回CompletableFuture时为异步调用，代理直接返回future
  * </p>
  *
  * @author Jay
@@ -32,10 +36,13 @@ public class RpcProxy {
      */
     private final HashMap<Class<?>, Object> proxyInstances = new HashMap<>(256);
 
+    /**
+     * 方法元数据缓存：方法签名、路由key参数
+     */
+    private final ConcurrentHashMap<Method, MethodMetadata> methodMetadata = new ConcurrentHashMap<>(256);
+
     @Resource
     private RpcClient rpcClient;
-    @Resource
-    private UnfinishedRequestHolder unfinishedRequestHolder;
 
     /**
      * 默认超时时间：10s
@@ -98,32 +105,75 @@ public class RpcProxy {
             动态代理
             对调用的方法生成代理，代理方法中通过发送RPC请求来获取返回值
          */
+        long timeoutMillis = (timeUnit == null ? TimeUnit.SECONDS : timeUnit).toMillis(timeout <= 0 ? DEFAULT_TIMEOUT : timeout);
         Object proxyInstance = Proxy.newProxyInstance(clazz.getClassLoader(), new Class[]{clazz}, (proxy, method, args) -> {
+            MethodMetadata metadata = methodMetadata.computeIfAbsent(method, m -> new MethodMetadata(clazz, m));
             // 封装RPC请求
             RpcRequest request = RpcRequest.builder()
                     .methodName(method.getName())
                     .parameters(args)
                     .targetClass(clazz)
                     .parameterTypes(method.getParameterTypes())
-                    // 请求UUID
-                    .requestId(UUID.randomUUID().toString())
+                    .methodKey(metadata.getMethodKey())
+                    .primitiveParameters(metadata.isPrimitiveParameters())
                     .build();
-            // 发送RPC请求，得到CompletableFuture
-            CompletableFuture<RpcResponse> future = rpcClient.send(request, applicationName);
+            boolean async = isAsyncMethod(method);
+            // 发送RPC请求，得到CompletableFuture，超时由时间轮完成
+            CompletableFuture<RpcResponse> future;
             try{
-                // 等待response，默认超时时间10s
-                RpcResponse response = future.get(timeout <= 0 ? DEFAULT_TIMEOUT : timeout, timeUnit == null ? TimeUnit.SECONDS : timeUnit);
-                if(response.getError() != null){
-                    throw response.getError();
+                future = rpcClient.send(request, applicationName, timeoutMillis, metadata.routeKey(args));
+            }catch (Exception e){
+                if(!async){
+                    throw e;
+                }
+                // 没有可用地址、连接失败等同步异常，异步方法通过future返回，调用方统一处理
+                if(e instanceof InterruptedException){
+                    Thread.currentThread().interrupt();
                 }
-                return response.getResult();
-            }catch (TimeoutException e){
-                // 超时，删除未完成请求缓存
-                unfinishedRequestHolder.remove(request.getRequestId());
-                throw new TimeoutException("request timeout, requestId="+request.getRequestId());
+                CompletableFuture<Object> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+            // 异步方法，直接返回future，不阻塞调用线程
+            if(async){
+                return future.thenApply(RpcProxy::unwrapResponse);
+            }
+            RpcResponse response;
+            try{
+                // 等待response
+                response = future.get();
+            }catch (ExecutionException e){
+                // 超时或连接断开
+                throw e.getCause();
+            }
+            if(response.getError() != null){
+                throw response.getError();
             }
+            return response.getResult();
         });
         // 返回接口类型的RPC实例
         return (T)proxyInstance;
     }
+
+    /**
+     * 方法返回类型是CompletableFuture或CompletionStage，表示异步调用
+     * @param method 方法
+     * @return boolean
+     */
+    private static boolean isAsyncMethod(Method method){
+        Class<?> returnType = method.getReturnType();
+        return returnType == CompletableFuture.class || returnType == CompletionStage.class;
+    }
+
+    /**
+     * 异步调用时，从response中取出结果，方法异常通过CompletionException传递给future
+     * @param response response
+     * @return 方法返回值
+     */
+    private static Object unwrapResponse(RpcResponse response){
+        if(response.getError() != null){
+            throw new CompletionException(response.getError());
+        }
+        return response.getResult();
+    }
 }
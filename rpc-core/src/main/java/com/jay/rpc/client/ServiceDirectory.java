@@ -0,0 +1,230 @@
+package com.jay.rpc.client;
+
+import com.jay.rpc.entity.ServerInfo;
+import com.jay.rpc.loadbalance.EndpointStats;
+import com.jay.rpc.registry.Registry;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ *  客户端服务地址目录
+ *  每个服务第一次调用时从注册中心加载地址，之后使用本地的不可变快照，发送请求时不访问注册中心
+ *  快照通过注册中心的推送（ZooKeeper子节点watch等）和后台定时刷新更新
+ *  地址没有变化时保留原快照对象，负载均衡器可以通过引用判断地址是否变化
+ *  加载失败或没有地址时不缓存快照，调用时同步重新加载（限制频率），服务提供者晚于客户端启动时不需要等待后台刷新
+ *  每次刷新都重新读取主机信息更新地址权重，地址没有变化时服务端修改的权重也能生效；新出现的地址开始预热
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/3
+ **/
+@Component
+@Slf4j
+public class ServiceDirectory {
+    @Resource
+    private Registry registry;
+
+    /**
+     * 后台刷新周期，秒，0表示只依赖注册中心推送
+     */
+    @Value("${rpc.client.address-refresh-seconds:30}")
+    private int refreshSeconds;
+
+    /**
+     * 服务名 - 地址快照
+     */
+    private final ConcurrentHashMap<String, List<InetSocketAddress>> snapshots = new ConcurrentHashMap<>(16);
+    /**
+     * 首次加载锁，避免并发请求同时访问注册中心
+     */
+    private final ReentrantLock loadLock = new ReentrantLock();
+    /**
+     * 已订阅的服务名
+     */
+    private final Set<String> subscribed = ConcurrentHashMap.newKeySet();
+    /**
+     * 服务名 - 上次同步加载到空地址的时间，毫秒
+     */
+    private final ConcurrentHashMap<String, Long> emptyLoadTimes = new ConcurrentHashMap<>(16);
+    /**
+     * 没有地址时同步加载的最小间隔
+     */
+    private static final long EMPTY_RELOAD_INTERVAL_MILLIS = 1000;
+
+    private ScheduledExecutorService refreshExecutor;
+
+    /**
+     * 地址排序，保证同一组地址的快照顺序一致
+     */
+    private static final Comparator<InetSocketAddress> ADDRESS_ORDER = Comparator
+            .comparing(InetSocketAddress::getHostString)
+            .thenComparingInt(InetSocketAddress::getPort);
+
+    @PostConstruct
+    public void init(){
+        refreshExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("rpc-address-refresh", true));
+        if(refreshSeconds > 0){
+            refreshExecutor.scheduleWithFixedDelay(this::refreshAll, refreshSeconds, refreshSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * 获取服务地址快照
+     * @param serviceName 服务名
+     * @return 不可变地址列表，没有可用地址时返回空列表
+     */
+    public List<InetSocketAddress> getAddresses(String serviceName){
+        List<InetSocketAddress> snapshot = snapshots.get(serviceName);
+        if(snapshot != null){
+            return snapshot;
+        }
+        return loadNow(serviceName);
+    }
+
+    /**
+     * 没有快照时同步加载服务地址，第一次加载时监听地址变化
+     * 加载到空地址后，间隔EMPTY_RELOAD_INTERVAL_MILLIS内的调用直接返回空列表，不访问注册中心
+     * @param serviceName 服务名
+     * @return 地址快照
+     */
+    private List<InetSocketAddress> loadNow(String serviceName){
+        Long lastEmptyLoad = emptyLoadTimes.get(serviceName);
+        if(lastEmptyLoad != null && System.currentTimeMillis() - lastEmptyLoad < EMPTY_RELOAD_INTERVAL_MILLIS){
+            return Collections.emptyList();
+        }
+        loadLock.lock();
+        try{
+            List<InetSocketAddress> snapshot = snapshots.get(serviceName);
+            if(snapshot != null){
+                return snapshot;
+            }
+            if(subscribed.add(serviceName)){
+                // 地址变化时在刷新线程中重新加载，不阻塞注册中心的事件线程
+                boolean watching = registry.watch(serviceName, () -> refreshExecutor.execute(() -> refresh(serviceName)));
+                log.info("订阅服务地址：{}，注册中心推送：{}", serviceName, watching);
+            }
+            snapshot = load(serviceName);
+            if(snapshot == null || snapshot.isEmpty()){
+                // 不缓存空快照，下次调用重新加载
+                emptyLoadTimes.put(serviceName, System.currentTimeMillis());
+                log.warn("服务没有可用地址：{}", serviceName);
+                return Collections.emptyList();
+            }
+            emptyLoadTimes.remove(serviceName);
+            snapshots.put(serviceName, snapshot);
+            // 首次加载的地址视为已经预热
+            updateWeights(serviceName, snapshot, Collections.emptyList(), false);
+            log.info("加载服务地址：{}，地址数：{}", serviceName, snapshot.size());
+            return snapshot;
+        }finally {
+            loadLock.unlock();
+        }
+    }
+
+    /**
+     * 刷新某个服务的地址和权重，地址没有变化时保留原快照
+     * @param serviceName 服务名
+     */
+    private void refresh(String serviceName){
+        List<InetSocketAddress> latest = load(serviceName);
+        // 加载失败时保留原快照
+        if(latest == null){
+            return;
+        }
+        List<InetSocketAddress> current = snapshots.get(serviceName);
+        if(latest.isEmpty()){
+            // 所有地址下线，移除快照，调用时同步重新加载
+            if(current != null){
+                snapshots.remove(serviceName);
+                log.info("服务地址变化：{}，{} -> []", serviceName, current);
+            }
+            return;
+        }
+        if(latest.equals(current)){
+            // 地址没有变化，主机信息（权重）可能变化
+            updateWeights(serviceName, current, current, false);
+            return;
+        }
+        snapshots.put(serviceName, latest);
+        emptyLoadTimes.remove(serviceName);
+        log.info("服务地址变化：{}，{} -> {}", serviceName, current, latest);
+        updateWeights(serviceName, latest, current == null ? Collections.emptyList() : current, true);
+    }
+
+    private void refreshAll(){
+        for (String serviceName : subscribed) {
+            refresh(serviceName);
+        }
+    }
+
+    /**
+     * 根据主机信息更新地址权重：配置了权重时使用配置，否则使用CPU数量
+     * @param serviceName 服务名
+     * @param addresses 当前地址
+     * @param previous 变化前的地址
+     * @param warmup 新出现的地址是否需要预热
+     */
+    private void updateWeights(String serviceName, List<InetSocketAddress> addresses, List<InetSocketAddress> previous, boolean warmup){
+        Map<InetSocketAddress, ServerInfo> infos;
+        try{
+            infos = registry.getServerInfos(serviceName);
+        }catch (Exception e){
+            log.warn("获取主机信息失败：{}", serviceName, e);
+            infos = Collections.emptyMap();
+        }
+        for (InetSocketAddress address : addresses) {
+            EndpointStats stats = EndpointStats.of(address);
+            ServerInfo info = infos.get(address);
+            if(info != null){
+                stats.setWeight(info.getWeight() > 0 ? info.getWeight() : info.getAvailableProcessors());
+            }
+            if(warmup && !previous.contains(address)){
+                stats.markAppeared();
+            }
+        }
+    }
+
+    /**
+     * 从注册中心加载地址
+     * @param serviceName 服务名
+     * @return 排序后的不可变列表，加载失败返回null
+     */
+    private List<InetSocketAddress> load(String serviceName){
+        try{
+            List<InetSocketAddress> addresses = registry.getServiceAddress(serviceName);
+            if(addresses == null){
+                return null;
+            }
+            List<InetSocketAddress> sorted = new ArrayList<>(addresses);
+            sorted.sort(ADDRESS_ORDER);
+            return Collections.unmodifiableList(sorted);
+        }catch (Exception e){
+            log.error("加载服务地址失败：{}", serviceName, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.jay.rpc.client;
+
+import com.jay.rpc.loadbalance.LoadBalancer;
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * <p>
+ *  客户端调用某个服务的配置
+ *  默认值来自rpc.client.xxx，可以通过rpc.client.service.{服务名}.xxx为单个服务覆盖
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/4
+ **/
+@Builder
+@Getter
+public class ServiceOptions {
+    /**
+     * 负载均衡器
+     */
+    private final LoadBalancer loadBalancer;
+    /**
+     * 压缩方式
+     * @see com.jay.common.enums.CompressorTypeEnum
+     */
+    private final byte compress;
+    /**
+     * 序列化方式
+     * @see com.jay.common.enums.SerializerTypeEnum
+     */
+    private final byte serializer;
+}
@@ -2,69 +2,217 @@ package com.jay.rpc.client;
 
 import com.jay.rpc.entity.RpcResponse;
 import io.netty.channel.Channel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import javax.annotation.Resource;
 import java.net.InetSocketAddress;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * <p>
  *  未完成请求缓存
  *  缓存请求的CompletableFuture、channel、address
- *  需要channel和 address来释放连接池的连接
+ *  连接是多路复用的，响应到达后不需要释放连接，连接断开时该连接上的请求全部失败
+ *
+ *  使用报文头部的int类型requestId作为key，分段存放在int为key的HashMap中
+ *  每一段有自己的锁，避免UUID、String以及key装箱带来的开销
+ *
+ *  超时由时间轮统一管理：请求超时后从表中移除，future异常完成
+ *  调用方不需要阻塞等待超时，超时后到达的响应只做计数
  * </p>
  *
  * @author Jay
  * @date 2021/11/17
  **/
 @Component
+@Slf4j
 public class UnfinishedRequestHolder {
-    @Resource
-    private ChannelProvider channelProvider;
     /**
-     * 请求id-请求completableFuture
+     * 分段数量，2的幂
+     */
+    private static final int STRIPE_COUNT = stripeCount();
+    private static final int STRIPE_MASK = STRIPE_COUNT - 1;
+
+    /**
+     * 请求id-未完成请求，分段
+     */
+    private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+    /**
+     * 超时时间轮，tick=10ms，512个槽
+     */
+    private final HashedWheelTimer timer = new HashedWheelTimer(new DefaultThreadFactory("rpc-request-timeout", true), 10, TimeUnit.MILLISECONDS, 512);
+
+    /**
+     * 超时请求数量
+     */
+    private final LongAdder expiredCount = new LongAdder();
+    /**
+     * 超时后到达的响应数量
      */
-    private final Map<String, UnfinishedRequest> futureMap = new ConcurrentHashMap<>();
+    private final LongAdder lateResponseCount = new LongAdder();
+
+    public UnfinishedRequestHolder() {
+        for(int i = 0; i < STRIPE_COUNT; i++){
+            stripes[i] = new Stripe();
+        }
+    }
 
     /**
      * put
-     * @param requestId requestId
+     * @param requestId 报文头部requestId
      * @param unfinishedRequest unfinishedRequest
+     * @param timeoutMillis 超时时间，毫秒
      */
-    public void put(String requestId, UnfinishedRequest unfinishedRequest){
-        futureMap.put(requestId, unfinishedRequest);
+    public void put(int requestId, UnfinishedRequest unfinishedRequest, long timeoutMillis){
+        unfinishedRequest.requestId = requestId;
+        unfinishedRequest.holder = this;
+        Stripe stripe = stripeOf(requestId);
+        synchronized (stripe){
+            stripe.map.put(requestId, unfinishedRequest);
+        }
+        // 加入时间轮
+        unfinishedRequest.timeout = timer.newTimeout(unfinishedRequest, timeoutMillis, TimeUnit.MILLISECONDS);
     }
 
     /**
      * complete
+     * @param requestId 报文头部requestId
      * @param response response
      */
-    public void complete(RpcResponse response){
-        assert response.getRequestId() == null;
-        UnfinishedRequest unfinishedRequest = futureMap.remove(response.getRequestId());
+    public void complete(int requestId, RpcResponse response){
+        UnfinishedRequest unfinishedRequest = remove(requestId);
+        // 请求已超时被移除
+        if(unfinishedRequest == null){
+            lateResponseCount.increment();
+            log.warn("收到超时请求的响应，requestId：{}", requestId);
+            return;
+        }
         // complete future
         unfinishedRequest.future.complete(response);
-        // 连接池释放连接
-        channelProvider.get(unfinishedRequest.address).release(unfinishedRequest.channel);
     }
 
-    public void remove(String requestId){
-        futureMap.remove(requestId);
+    /**
+     * remove
+     * @param requestId 报文头部requestId
+     * @return 被移除的请求，不存在返回null
+     */
+    public UnfinishedRequest remove(int requestId){
+        Stripe stripe = stripeOf(requestId);
+        UnfinishedRequest unfinishedRequest;
+        synchronized (stripe){
+            unfinishedRequest = stripe.map.remove(requestId);
+        }
+        // 取消时间轮中的超时任务
+        if(unfinishedRequest != null && unfinishedRequest.timeout != null){
+            unfinishedRequest.timeout.cancel();
+        }
+        return unfinishedRequest;
+    }
+
+    /**
+     * 请求超时，由时间轮线程调用
+     * @param requestId requestId
+     */
+    private void expire(int requestId){
+        Stripe stripe = stripeOf(requestId);
+        UnfinishedRequest unfinishedRequest;
+        synchronized (stripe){
+            unfinishedRequest = stripe.map.remove(requestId);
+        }
+        if(unfinishedRequest != null){
+            expiredCount.increment();
+            unfinishedRequest.future.completeExceptionally(new TimeoutException("request timeout, requestId=" + requestId + ", address=" + unfinishedRequest.address));
+        }
+    }
+
+    public long getExpiredCount(){
+        return expiredCount.sum();
+    }
+
+    public long getLateResponseCount(){
+        return lateResponseCount.sum();
+    }
+
+    /**
+     * 连接断开，该连接上的未完成请求异常完成
+     * @param channel 断开的连接
+     */
+    public void failChannel(Channel channel){
+        List<UnfinishedRequest> failed = new ArrayList<>();
+        for(Stripe stripe : stripes){
+            synchronized (stripe){
+                Iterator<UnfinishedRequest> iterator = stripe.map.values().iterator();
+                while(iterator.hasNext()){
+                    UnfinishedRequest unfinishedRequest = iterator.next();
+                    if(unfinishedRequest.channel == channel){
+                        iterator.remove();
+                        failed.add(unfinishedRequest);
+                        if(unfinishedRequest.timeout != null){
+                            unfinishedRequest.timeout.cancel();
+                        }
+                    }
+                }
+            }
+        }
+        // 在锁外完成future，避免回调在锁内执行
+        for(UnfinishedRequest unfinishedRequest : failed){
+            unfinishedRequest.future.completeExceptionally(new RuntimeException("connection closed: " + unfinishedRequest.address));
+        }
+    }
+
+    private Stripe stripeOf(int requestId){
+        return stripes[requestId & STRIPE_MASK];
     }
 
+    private static int stripeCount(){
+        int count = 1;
+        int target = Runtime.getRuntime().availableProcessors() * 2;
+        while(count < target){
+            count <<= 1;
+        }
+        return count;
+    }
 
-    static class UnfinishedRequest{
+    /**
+     * 一段未完成请求表
+     */
+    private static class Stripe{
+        private final IntObjectMap<UnfinishedRequest> map = new IntObjectHashMap<>(64);
+    }
+
+    /**
+     * 未完成请求，同时作为时间轮的超时任务，避免每个请求额外创建TimerTask
+     */
+    static class UnfinishedRequest implements TimerTask {
         CompletableFuture<RpcResponse> future;
         Channel channel;
         InetSocketAddress address;
+        int requestId;
+        UnfinishedRequestHolder holder;
+        volatile Timeout timeout;
 
         public UnfinishedRequest(CompletableFuture<RpcResponse> future, Channel channel, InetSocketAddress address) {
             this.future = future;
             this.channel = channel;
             this.address = address;
         }
+
+        @Override
+        public void run(Timeout timeout) {
+            holder.expire(requestId);
+        }
     }
 }
@@ -1,6 +1,17 @@
 package com.jay.rpc.compress;
 
 import com.jay.common.extention.SPI;
+import com.jay.rpc.constants.RpcConstants;
+import com.jay.rpc.util.IoUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Compression tools
@@ -22,4 +33,64 @@ public interface Compressor {
      * @return result
      */
     byte[] decompress(byte[] src);
+
+    /**
+     * 创建压缩输出流，写入的数据压缩后写到out
+     * close压缩流表示数据写入完成
+     * 默认实现在close时把缓存的数据整体压缩，压缩工具可以覆盖该方法实现流式压缩
+     * @param out 目标输出流
+     * @return 压缩输出流
+     * @throws IOException IOException
+     */
+    default OutputStream compress(OutputStream out) throws IOException {
+        return new ByteArrayOutputStream(){
+            private boolean closed;
+            @Override
+            public void close() throws IOException {
+                if(!closed){
+                    closed = true;
+                    out.write(compress(toByteArray()));
+                }
+            }
+        };
+    }
+
+    /**
+     * 创建解压输入流，从中读取的是in解压后的数据
+     * 默认实现先读取全部数据整体解压，压缩工具可以覆盖该方法实现流式解压
+     * @param in 压缩数据输入流
+     * @return 解压输入流
+     * @throws IOException IOException
+     */
+    default InputStream decompress(InputStream in) throws IOException {
+        return new ByteArrayInputStream(decompress(IoUtil.readAll(in)));
+    }
+
+    /**
+     * 压缩src中的可读数据，写入dest
+     * 默认实现基于压缩输出流，压缩工具可以覆盖该方法直接读写ByteBuf
+     * @param src 源数据，读取全部可读字节
+     * @param dest 目标buffer
+     * @throws IOException IOException
+     */
+    default void compress(ByteBuf src, ByteBuf dest) throws IOException {
+        try(OutputStream out = compress(new ByteBufOutputStream(dest))){
+            src.readBytes(out, src.readableBytes());
+        }
+    }
+
+    /**
+     * 解压src中的可读数据，写入dest，解压后超过MAX_DECOMPRESSED_LENGTH时抛出异常
+     * 默认实现基于解压输入流，压缩工具可以覆盖该方法直接读写ByteBuf
+     * @param src 压缩数据，读取全部可读字节
+     * @param dest 目标buffer
+     * @throws IOException IOException
+     */
+    default void decompress(ByteBuf src, ByteBuf dest) throws IOException {
+        try(InputStream in = IoUtil.limit(decompress(new ByteBufInputStream(src)), RpcConstants.MAX_DECOMPRESSED_LENGTH)){
+            while(dest.writeBytes(in, 4096) != -1){
+                // 读取到流结束
+            }
+        }
+    }
 }
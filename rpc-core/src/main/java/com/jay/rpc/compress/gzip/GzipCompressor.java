@@ -1,16 +1,29 @@
 package com.jay.rpc.compress.gzip;
 
 import com.jay.rpc.compress.Compressor;
+import com.jay.rpc.constants.RpcConstants;
+import com.jay.rpc.util.IoUtil;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
 
 /**
  * <p>
  *  GZIP 压缩工具
+ *  编解码器通过ByteBuf接口压缩、解压，Deflater、Inflater和缓冲区每个线程复用一份，
+ *  不再为每条消息创建GZIP流和zlib本地内存
+ *  GZIP头部和尾部（CRC32、原始长度）由本类读写，与GZIPOutputStream生成的数据格式一致
+ *  解压后的数据超过MAX_DECOMPRESSED_LENGTH时抛出异常，避免少量压缩数据展开占满内存
  * </p>
  *
  * @author Jay
@@ -18,39 +31,268 @@ import java.util.zip.GZIPOutputStream;
  **/
 public class GzipCompressor implements Compressor {
 
-    private static final int BUFFER_SIZE = 1024;
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * GZIP魔数
+     */
+    private static final int GZIP_MAGIC = 0x8b1f;
+    /**
+     * 头部标志位
+     */
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    /**
+     * 与GZIPOutputStream相同的10字节头部
+     */
+    private static final byte[] HEADER = {
+            (byte) GZIP_MAGIC, (byte) (GZIP_MAGIC >> 8), Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0
+    };
+
+    /**
+     * 线程复用的zlib状态，编解码在Netty IO线程中执行，线程数量固定
+     */
+    private static final ThreadLocal<Deflater> DEFLATER = ThreadLocal.withInitial(() -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(() -> new Inflater(true));
+    private static final ThreadLocal<CRC32> CRC = ThreadLocal.withInitial(CRC32::new);
+    private static final ThreadLocal<byte[]> INPUT_BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+    private static final ThreadLocal<byte[]> OUTPUT_BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
 
     @Override
     public byte[] compress(byte[] src) {
-        if(src == null || src.length == 0){
-            throw new NullPointerException();
-        }
-        try(ByteArrayOutputStream out = new ByteArrayOutputStream(); GZIPOutputStream gzip = new GZIPOutputStream(out)){
-            gzip.write(src);
-            gzip.flush();
-            gzip.finish();
-            return out.toByteArray();
+        ByteBuf dest = Unpooled.buffer(src.length / 2 + HEADER.length + 8);
+        compress(Unpooled.wrappedBuffer(src), dest);
+        return toArray(dest);
+    }
+
+    @Override
+    public byte[] decompress(byte[] src) {
+        ByteBuf dest = Unpooled.buffer(src.length * 2);
+        try{
+            decompress(Unpooled.wrappedBuffer(src), dest);
+            return toArray(dest);
         } catch (IOException e) {
-            throw new RuntimeException("gzip compress error", e);
+            throw new RuntimeException("gzip decompress error", e);
         }
     }
 
     @Override
-    public byte[] decompress(byte[] src) {
-        if(src == null || src.length == 0){
-            throw new NullPointerException();
+    public void compress(ByteBuf src, ByteBuf dest) {
+        Deflater deflater = DEFLATER.get();
+        CRC32 crc = CRC.get();
+        byte[] output = OUTPUT_BUFFER.get();
+        deflater.reset();
+        crc.reset();
+        try{
+            dest.writeBytes(HEADER);
+            int length = src.readableBytes();
+            if(src.hasArray()){
+                // 堆内存直接使用底层数组，不拷贝
+                byte[] array = src.array();
+                int offset = src.arrayOffset() + src.readerIndex();
+                crc.update(array, offset, length);
+                deflater.setInput(array, offset, length);
+                deflateInput(deflater, dest, output);
+            }
+            else{
+                // 直接内存分段拷贝到线程缓冲区
+                byte[] input = INPUT_BUFFER.get();
+                int index = src.readerIndex();
+                int end = index + length;
+                while(index < end){
+                    int n = Math.min(input.length, end - index);
+                    src.getBytes(index, input, 0, n);
+                    crc.update(input, 0, n);
+                    deflater.setInput(input, 0, n);
+                    deflateInput(deflater, dest, output);
+                    index += n;
+                }
+            }
+            src.skipBytes(length);
+            deflater.finish();
+            while(!deflater.finished()){
+                deflate(deflater, dest, output);
+            }
+            // 尾部：CRC32 + 原始长度，小端
+            dest.writeIntLE((int) crc.getValue());
+            dest.writeIntLE(length);
+        }finally {
+            // 释放对输入数组的引用
+            deflater.reset();
         }
-        try(ByteArrayOutputStream out = new ByteArrayOutputStream();
-            GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(src))){
+    }
 
-            byte[] buffer = new byte[BUFFER_SIZE];
+    @Override
+    public void decompress(ByteBuf src, ByteBuf dest) throws IOException {
+        Inflater inflater = INFLATER.get();
+        CRC32 crc = CRC.get();
+        inflater.reset();
+        crc.reset();
+        try{
+            readHeader(src);
+            int startIndex = dest.writerIndex();
+            if(src.hasArray()){
+                byte[] array = src.array();
+                int offset = src.arrayOffset() + src.readerIndex();
+                inflater.setInput(array, offset, src.readableBytes());
+                inflate(inflater, dest, startIndex);
+                if(!inflater.finished()){
+                    throw new ZipException("unexpected end of gzip data");
+                }
+                // 跳过已经解压的数据，剩下的是尾部
+                src.skipBytes(src.readableBytes() - inflater.getRemaining());
+            }
+            else{
+                byte[] input = INPUT_BUFFER.get();
+                while(!inflater.finished()){
+                    if(!src.isReadable()){
+                        throw new ZipException("unexpected end of gzip data");
+                    }
+                    int n = Math.min(input.length, src.readableBytes());
+                    src.readBytes(input, 0, n);
+                    inflater.setInput(input, 0, n);
+                    inflate(inflater, dest, startIndex);
+                    // 本段中属于尾部的数据退回src
+                    if(inflater.finished()){
+                        src.readerIndex(src.readerIndex() - inflater.getRemaining());
+                    }
+                }
+            }
+            int length = dest.writerIndex() - startIndex;
+            updateCrc(crc, dest, startIndex, length);
+            // 校验尾部
+            if(src.readableBytes() < 8){
+                throw new ZipException("unexpected end of gzip data");
+            }
+            if((int) crc.getValue() != src.readIntLE()){
+                throw new ZipException("corrupt gzip trailer");
+            }
+            if(length != src.readIntLE()){
+                throw new ZipException("corrupt gzip trailer");
+            }
+        }catch (DataFormatException e){
+            throw new ZipException(e.getMessage());
+        }finally {
+            inflater.reset();
+        }
+    }
+
+    @Override
+    public OutputStream compress(OutputStream out) throws IOException {
+        // 流式压缩，直接写入目标流
+        return new GZIPOutputStream(out, BUFFER_SIZE);
+    }
+
+    @Override
+    public InputStream decompress(InputStream in) throws IOException {
+        // 流式解压，直接读取源数据流
+        return IoUtil.limit(new GZIPInputStream(in, BUFFER_SIZE), RpcConstants.MAX_DECOMPRESSED_LENGTH);
+    }
+
+    /**
+     * 压缩当前输入，直到deflater需要新的输入
+     */
+    private static void deflateInput(Deflater deflater, ByteBuf dest, byte[] output){
+        while(!deflater.needsInput()){
+            deflate(deflater, dest, output);
+        }
+    }
+
+    private static void deflate(Deflater deflater, ByteBuf dest, byte[] output){
+        if(dest.hasArray()){
+            // 直接压缩到目标数组
+            dest.ensureWritable(BUFFER_SIZE);
+            int n = deflater.deflate(dest.array(), dest.arrayOffset() + dest.writerIndex(), dest.writableBytes());
+            dest.writerIndex(dest.writerIndex() + n);
+        }
+        else{
+            int n = deflater.deflate(output, 0, output.length);
+            dest.writeBytes(output, 0, n);
+        }
+    }
+
+    /**
+     * 解压当前输入，直到inflater需要新的输入或数据结束
+     * @param startIndex 本条数据在dest中的起始位置，用于限制解压后的长度
+     */
+    private static void inflate(Inflater inflater, ByteBuf dest, int startIndex) throws DataFormatException, ZipException {
+        byte[] output = OUTPUT_BUFFER.get();
+        while(!inflater.finished() && !inflater.needsInput()){
             int n;
-            while((n = gzip.read(buffer,0, BUFFER_SIZE)) > -1){
-                out.write(buffer, 0, n);
+            if(dest.hasArray()){
+                dest.ensureWritable(BUFFER_SIZE);
+                n = inflater.inflate(dest.array(), dest.arrayOffset() + dest.writerIndex(), dest.writableBytes());
+                dest.writerIndex(dest.writerIndex() + n);
             }
-            return out.toByteArray();
-        } catch (IOException e) {
-            throw new RuntimeException("gzip decompress error", e);
+            else{
+                n = inflater.inflate(output, 0, output.length);
+                dest.writeBytes(output, 0, n);
+            }
+            if(n == 0 && inflater.needsDictionary()){
+                throw new ZipException("gzip data requires a preset dictionary");
+            }
+            if(dest.writerIndex() - startIndex > RpcConstants.MAX_DECOMPRESSED_LENGTH){
+                throw new ZipException("gzip data exceeds " + RpcConstants.MAX_DECOMPRESSED_LENGTH + " bytes");
+            }
+        }
+    }
+
+    private static void updateCrc(CRC32 crc, ByteBuf buf, int index, int length){
+        if(buf.hasArray()){
+            crc.update(buf.array(), buf.arrayOffset() + index, length);
+            return;
+        }
+        byte[] buffer = OUTPUT_BUFFER.get();
+        int end = index + length;
+        while(index < end){
+            int n = Math.min(buffer.length, end - index);
+            buf.getBytes(index, buffer, 0, n);
+            crc.update(buffer, 0, n);
+            index += n;
         }
     }
+
+    /**
+     * 读取并校验GZIP头部，跳过可选字段
+     */
+    private static void readHeader(ByteBuf src) throws ZipException {
+        if(src.readableBytes() < HEADER.length){
+            throw new ZipException("not in gzip format");
+        }
+        if(src.readUnsignedShortLE() != GZIP_MAGIC){
+            throw new ZipException("not in gzip format");
+        }
+        if(src.readUnsignedByte() != Deflater.DEFLATED){
+            throw new ZipException("unsupported compression method");
+        }
+        int flags = src.readUnsignedByte();
+        // mtime(4)、xfl(1)、os(1)
+        src.skipBytes(6);
+        if((flags & FEXTRA) != 0){
+            src.skipBytes(src.readUnsignedShortLE());
+        }
+        if((flags & FNAME) != 0){
+            skipZeroTerminated(src);
+        }
+        if((flags & FCOMMENT) != 0){
+            skipZeroTerminated(src);
+        }
+        if((flags & FHCRC) != 0){
+            src.skipBytes(2);
+        }
+    }
+
+    private static void skipZeroTerminated(ByteBuf src){
+        while(src.readByte() != 0){
+            // skip
+        }
+    }
+
+    private static byte[] toArray(ByteBuf buf){
+        byte[] result = new byte[buf.readableBytes()];
+        buf.readBytes(result);
+        return result;
+    }
 }
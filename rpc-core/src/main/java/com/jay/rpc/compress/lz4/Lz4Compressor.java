@@ -0,0 +1,64 @@
+package com.jay.rpc.compress.lz4;
+
+import com.jay.rpc.compress.Compressor;
+import com.jay.rpc.constants.RpcConstants;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+/**
+ * <p>
+ *  LZ4 压缩工具
+ *  使用LZ4块格式，压缩数据前4字节记录原始长度
+ *  解压使用safeDecompressor，原始长度超过MAX_DECOMPRESSED_LENGTH或与实际不符时抛出异常
+ *  压缩率低于GZIP，但压缩、解压速度快很多
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/8
+ **/
+public class Lz4Compressor implements Compressor {
+
+    private static final LZ4Factory FACTORY = LZ4Factory.fastestInstance();
+    private static final LZ4Compressor COMPRESSOR = FACTORY.fastCompressor();
+    private static final LZ4SafeDecompressor DECOMPRESSOR = FACTORY.safeDecompressor();
+
+    @Override
+    public byte[] compress(byte[] src) {
+        int maxLength = COMPRESSOR.maxCompressedLength(src.length);
+        byte[] dest = new byte[4 + maxLength];
+        writeInt(dest, src.length);
+        int length = COMPRESSOR.compress(src, 0, src.length, dest, 4, maxLength);
+        byte[] result = new byte[4 + length];
+        System.arraycopy(dest, 0, result, 0, result.length);
+        return result;
+    }
+
+    @Override
+    public byte[] decompress(byte[] src) {
+        int originalLength = readInt(src);
+        if(originalLength < 0 || originalLength > RpcConstants.MAX_DECOMPRESSED_LENGTH){
+            throw new IllegalArgumentException("invalid lz4 original length: " + originalLength);
+        }
+        byte[] dest = new byte[originalLength];
+        int length = DECOMPRESSOR.decompress(src, 4, src.length - 4, dest, 0, originalLength);
+        if(length != originalLength){
+            throw new IllegalArgumentException("corrupt lz4 data, expected length: " + originalLength + ", actual: " + length);
+        }
+        return dest;
+    }
+
+    private static void writeInt(byte[] dest, int value){
+        dest[0] = (byte) (value >>> 24);
+        dest[1] = (byte) (value >>> 16);
+        dest[2] = (byte) (value >>> 8);
+        dest[3] = (byte) value;
+    }
+
+    private static int readInt(byte[] src){
+        if(src.length < 4){
+            throw new IllegalArgumentException("corrupt lz4 data");
+        }
+        return ((src[0] & 0xff) << 24) | ((src[1] & 0xff) << 16) | ((src[2] & 0xff) << 8) | (src[3] & 0xff);
+    }
+}
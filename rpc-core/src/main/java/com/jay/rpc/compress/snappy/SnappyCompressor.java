@@ -0,0 +1,41 @@
+package com.jay.rpc.compress.snappy;
+
+import com.jay.rpc.compress.Compressor;
+import com.jay.rpc.constants.RpcConstants;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ *  Snappy 压缩工具
+ *  解压前读取数据头部的原始长度，超过MAX_DECOMPRESSED_LENGTH时抛出异常
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/8
+ **/
+public class SnappyCompressor implements Compressor {
+
+    @Override
+    public byte[] compress(byte[] src) {
+        try{
+            return Snappy.compress(src);
+        }catch (IOException e){
+            throw new RuntimeException("snappy compress error", e);
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] src) {
+        try{
+            int originalLength = Snappy.uncompressedLength(src);
+            if(originalLength < 0 || originalLength > RpcConstants.MAX_DECOMPRESSED_LENGTH){
+                throw new IllegalArgumentException("invalid snappy original length: " + originalLength);
+            }
+            return Snappy.uncompress(src);
+        }catch (IOException e){
+            throw new RuntimeException("snappy decompress error", e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.jay.rpc.compress.stream;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.zip.Deflater;
+
+/**
+ * <p>
+ *  连接级压缩流，压缩端
+ *  一条连接上所有消息共用一个Deflater，每条消息的数据部分以SYNC_FLUSH结束，
+ *  后面的消息可以引用前面消息的内容，大量相似的小请求压缩率远高于单条消息压缩
+ *  SYNC_FLUSH固定以 00 00 ff ff 结尾，发送时去掉这4个字节，解压端补回
+ *  空数据部分不经过压缩流，压缩结果也为空：没有新输入时zlib的SYNC_FLUSH不输出任何数据
+ *
+ *  每个编码器持有一个实例，只在连接的IO线程中使用，连接关闭时释放
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/10
+ **/
+public class StreamDeflater {
+    static final byte[] SYNC_TRAILER = {0, 0, (byte) 0xff, (byte) 0xff};
+    static final int BUFFER_SIZE = 8192;
+
+    /**
+     * 上下文窗口跨消息共享，最快的压缩等级已经能找到消息之间的重复内容
+     */
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final byte[] input = new byte[BUFFER_SIZE];
+    private final byte[] output = new byte[BUFFER_SIZE];
+
+    /**
+     * 压缩src中的可读数据，写入dest
+     * @param src 消息数据部分
+     * @param dest 目标buffer
+     */
+    public void compress(ByteBuf src, ByteBuf dest){
+        int length = src.readableBytes();
+        if(length == 0){
+            return;
+        }
+        if(src.hasArray()){
+            deflater.setInput(src.array(), src.arrayOffset() + src.readerIndex(), length);
+            deflate(dest);
+        }
+        else{
+            // 直接内存分段拷贝
+            int index = src.readerIndex();
+            int end = index + length;
+            while(index < end){
+                int n = Math.min(input.length, end - index);
+                src.getBytes(index, input, 0, n);
+                deflater.setInput(input, 0, n);
+                deflate(dest);
+                index += n;
+            }
+        }
+        src.skipBytes(length);
+        // 输出本条消息的全部数据，不结束压缩流
+        int n;
+        while((n = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH)) > 0){
+            dest.writeBytes(output, 0, n);
+            if(n < output.length){
+                break;
+            }
+        }
+        // 去掉同步标记
+        dest.writerIndex(dest.writerIndex() - SYNC_TRAILER.length);
+    }
+
+    private void deflate(ByteBuf dest){
+        while(!deflater.needsInput()){
+            int n = deflater.deflate(output, 0, output.length, Deflater.NO_FLUSH);
+            dest.writeBytes(output, 0, n);
+        }
+    }
+
+    /**
+     * 释放zlib本地内存
+     */
+    public void close(){
+        deflater.end();
+    }
+}
@@ -0,0 +1,88 @@
+package com.jay.rpc.compress.stream;
+
+import com.jay.rpc.constants.RpcConstants;
+import io.netty.buffer.ByteBuf;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * <p>
+ *  连接级压缩流，解压端
+ *  按接收顺序解压同一条连接上的消息，每条消息补回发送端去掉的同步标记
+ *  任何一条消息解压失败后，后续消息都无法解压，调用方需要关闭连接
+ *  每条消息解压后超过MAX_DECOMPRESSED_LENGTH时视为解压失败
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/10
+ **/
+public class StreamInflater {
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] input = new byte[StreamDeflater.BUFFER_SIZE];
+    private final byte[] output = new byte[StreamDeflater.BUFFER_SIZE];
+
+    /**
+     * 解压src中的可读数据，写入dest
+     * @param src 压缩后的数据部分
+     * @param dest 目标buffer
+     * @throws ZipException 数据损坏或解压后数据过长
+     */
+    public void decompress(ByteBuf src, ByteBuf dest) throws ZipException {
+        int startIndex = dest.writerIndex();
+        try{
+            int length = src.readableBytes();
+            if(length == 0){
+                // 空数据部分没有经过压缩流
+                return;
+            }
+            if(src.hasArray()){
+                inflater.setInput(src.array(), src.arrayOffset() + src.readerIndex(), length);
+                inflate(dest, startIndex);
+            }
+            else{
+                int index = src.readerIndex();
+                int end = index + length;
+                while(index < end){
+                    int n = Math.min(input.length, end - index);
+                    src.getBytes(index, input, 0, n);
+                    inflater.setInput(input, 0, n);
+                    inflate(dest, startIndex);
+                    index += n;
+                }
+            }
+            src.skipBytes(length);
+            // 补回同步标记，结束当前块
+            inflater.setInput(StreamDeflater.SYNC_TRAILER);
+            inflate(dest, startIndex);
+        }catch (DataFormatException e){
+            throw new ZipException(e.getMessage());
+        }
+    }
+
+    /**
+     * 解压当前输入，直到inflater需要新的输入
+     * @param startIndex 本条消息在dest中的起始位置，用于限制解压后的长度
+     */
+    private void inflate(ByteBuf dest, int startIndex) throws DataFormatException, ZipException {
+        int n;
+        while((n = inflater.inflate(output, 0, output.length)) > 0 || !inflater.needsInput()){
+            if(n == 0){
+                // 压缩流不会结束，也不使用预设字典
+                throw new ZipException("corrupt deflate stream");
+            }
+            dest.writeBytes(output, 0, n);
+            if(dest.writerIndex() - startIndex > RpcConstants.MAX_DECOMPRESSED_LENGTH){
+                throw new ZipException("deflate stream message exceeds " + RpcConstants.MAX_DECOMPRESSED_LENGTH + " bytes");
+            }
+        }
+    }
+
+    /**
+     * 释放zlib本地内存
+     */
+    public void close(){
+        inflater.end();
+    }
+}
@@ -0,0 +1,82 @@
+package com.jay.rpc.compress.zstd;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ *  字典训练样本采集
+ *  编码器序列化数据部分后按采样率复制一份未压缩的数据，用于离线训练Zstd字典
+ *  未开启采样时只有一次volatile读
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/11
+ **/
+public final class DictionarySampler {
+    /**
+     * 字典只对小消息有明显效果，大消息不采样
+     */
+    static final int MAX_SAMPLE_SIZE = 16 * 1024;
+
+    /**
+     * 每N条消息采样一条，0表示不采样
+     */
+    private static volatile int sampleRate;
+    /**
+     * 剩余采样数量
+     */
+    private static final AtomicInteger REMAINING = new AtomicInteger();
+    private static final Queue<byte[]> SAMPLES = new ConcurrentLinkedQueue<>();
+
+    private DictionarySampler(){}
+
+    static void start(int rate, int maxSamples){
+        REMAINING.set(maxSamples);
+        sampleRate = rate;
+    }
+
+    static void stop(){
+        sampleRate = 0;
+    }
+
+    /**
+     * 采样数据部分
+     * @param buf 编码输出
+     * @param index 数据部分起始位置
+     * @param length 数据部分长度
+     */
+    public static void sample(ByteBuf buf, int index, int length){
+        int rate = sampleRate;
+        if(rate <= 0 || length == 0 || length > MAX_SAMPLE_SIZE || ThreadLocalRandom.current().nextInt(rate) != 0){
+            return;
+        }
+        // 采样数量已满
+        if(REMAINING.getAndDecrement() <= 0){
+            stop();
+            return;
+        }
+        byte[] sample = new byte[length];
+        buf.getBytes(index, sample);
+        SAMPLES.offer(sample);
+    }
+
+    /**
+     * 取出已采集的样本
+     * @return 样本
+     */
+    static List<byte[]> drain(){
+        List<byte[]> samples = new ArrayList<>();
+        byte[] sample;
+        while((sample = SAMPLES.poll()) != null){
+            samples.add(sample);
+        }
+        return samples;
+    }
+}
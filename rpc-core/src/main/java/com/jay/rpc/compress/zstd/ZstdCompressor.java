@@ -0,0 +1,45 @@
+package com.jay.rpc.compress.zstd;
+
+import com.github.luben.zstd.Zstd;
+import com.jay.rpc.compress.Compressor;
+import com.jay.rpc.constants.RpcConstants;
+
+/**
+ * <p>
+ *  Zstd 压缩工具
+ *  压缩率接近GZIP，速度快数倍
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/8
+ **/
+public class ZstdCompressor implements Compressor {
+    /**
+     * 压缩级别，低级别速度优先
+     */
+    private static final int LEVEL = 3;
+
+    @Override
+    public byte[] compress(byte[] src) {
+        return Zstd.compress(src, LEVEL);
+    }
+
+    @Override
+    public byte[] decompress(byte[] src) {
+        // Zstd.compress生成的frame包含原始长度
+        return Zstd.decompress(src, originalLength(src));
+    }
+
+    /**
+     * 读取frame头部记录的原始长度，按该长度分配内存前检查
+     * @param frame zstd frame
+     * @return 原始长度
+     */
+    static int originalLength(byte[] frame){
+        long originalLength = Zstd.decompressedSize(frame);
+        if(originalLength <= 0 || originalLength > RpcConstants.MAX_DECOMPRESSED_LENGTH){
+            throw new IllegalArgumentException("invalid zstd original length: " + originalLength);
+        }
+        return (int) originalLength;
+    }
+}
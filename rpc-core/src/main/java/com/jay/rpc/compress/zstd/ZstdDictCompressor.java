@@ -0,0 +1,70 @@
+package com.jay.rpc.compress.zstd;
+
+import com.github.luben.zstd.Zstd;
+import com.jay.rpc.compress.Compressor;
+
+/**
+ * <p>
+ *  使用预训练字典的Zstd压缩工具
+ *  几百字节的小消息单独压缩时几乎没有可以引用的重复内容，
+ *  字典从实际流量中训练，包含消息中常见的类名、字段和取值，小消息的压缩率明显提高
+ *
+ *  压缩数据格式：4字节字典版本号 + Zstd frame，版本号为0表示没有使用字典
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/11
+ **/
+public class ZstdDictCompressor implements Compressor {
+    static final int LEVEL = 3;
+
+    @Override
+    public byte[] compress(byte[] src) {
+        ZstdDictionaries.Dictionary dictionary = ZstdDictionaries.current();
+        byte[] frame;
+        int version;
+        if(dictionary == null){
+            frame = Zstd.compress(src, LEVEL);
+            version = 0;
+        }
+        else{
+            frame = Zstd.compress(src, dictionary.compress);
+            version = dictionary.version;
+        }
+        byte[] result = new byte[frame.length + 4];
+        writeInt(result, version);
+        System.arraycopy(frame, 0, result, 4, frame.length);
+        return result;
+    }
+
+    @Override
+    public byte[] decompress(byte[] src) {
+        int version = readInt(src);
+        byte[] frame = new byte[src.length - 4];
+        System.arraycopy(src, 4, frame, 0, frame.length);
+        // frame包含原始长度，分配内存前检查
+        int originalLength = ZstdCompressor.originalLength(frame);
+        if(version == 0){
+            return Zstd.decompress(frame, originalLength);
+        }
+        ZstdDictionaries.Dictionary dictionary = ZstdDictionaries.get(version);
+        if(dictionary == null){
+            throw new IllegalStateException("zstd dictionary not loaded, version: " + version);
+        }
+        return Zstd.decompress(frame, dictionary.decompress, originalLength);
+    }
+
+    private static void writeInt(byte[] dest, int value){
+        dest[0] = (byte) (value >>> 24);
+        dest[1] = (byte) (value >>> 16);
+        dest[2] = (byte) (value >>> 8);
+        dest[3] = (byte) value;
+    }
+
+    private static int readInt(byte[] src){
+        if(src.length < 4){
+            throw new IllegalArgumentException("corrupt zstd-dict data");
+        }
+        return (src[0] & 0xff) << 24 | (src[1] & 0xff) << 16 | (src[2] & 0xff) << 8 | (src[3] & 0xff);
+    }
+}
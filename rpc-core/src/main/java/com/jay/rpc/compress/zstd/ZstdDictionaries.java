@@ -0,0 +1,63 @@
+package com.jay.rpc.compress.zstd;
+
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * <p>
+ *  已加载的Zstd字典
+ *  字典按版本号区分，压缩使用当前版本，解压时根据数据部分中的版本号选择字典
+ *  旧版本字典需要保留到所有节点都切换到新版本之后
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/11
+ **/
+public final class ZstdDictionaries {
+    /**
+     * 版本号 - 字典
+     */
+    private static volatile Map<Integer, Dictionary> dictionaries = Collections.emptyMap();
+    /**
+     * 压缩使用的字典，null表示不使用字典
+     */
+    private static volatile Dictionary current;
+
+    private ZstdDictionaries(){}
+
+    /**
+     * 替换已加载的字典
+     * @param loaded 版本号 - 字典
+     * @param currentVersion 压缩使用的版本，0表示不使用字典
+     */
+    static void update(Map<Integer, Dictionary> loaded, int currentVersion){
+        if(currentVersion != 0 && !loaded.containsKey(currentVersion)){
+            throw new IllegalArgumentException("zstd dictionary version not found: " + currentVersion);
+        }
+        dictionaries = Collections.unmodifiableMap(loaded);
+        current = currentVersion == 0 ? null : loaded.get(currentVersion);
+    }
+
+    static Dictionary current(){
+        return current;
+    }
+
+    static Dictionary get(int version){
+        return dictionaries.get(version);
+    }
+
+    static class Dictionary{
+        final int version;
+        final ZstdDictCompress compress;
+        final ZstdDictDecompress decompress;
+
+        Dictionary(int version, byte[] content, int level){
+            this.version = version;
+            this.compress = new ZstdDictCompress(content, level);
+            this.decompress = new ZstdDictDecompress(content);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.jay.rpc.compress.zstd;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *  Zstd字典管理
+ *  启动时从字典目录加载所有版本的字典，文件名为 {版本号}.dict
+ *  开启采样时定期把样本写入样本目录，由rpc-dict-trainer离线训练出新版本字典
+ *
+ *  样本文件格式：连续的 4字节长度 + 样本数据
+ *  新字典需要先部署到所有节点，再通过rpc.compress.zstd.dictionary-version切换压缩使用的版本
+ *  默认不使用字典，加载了新字典的节点不会自动使用新版本，避免其他节点还没有该字典时无法解压
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/11
+ **/
+@Component
+@Slf4j
+public class ZstdDictionaryManager {
+    private static final String DICTIONARY_SUFFIX = ".dict";
+    private static final long SAMPLE_FLUSH_SECONDS = 60;
+
+    /**
+     * 字典目录，为空时不加载字典
+     */
+    @Value("${rpc.compress.zstd.dictionary-dir:}")
+    private String dictionaryDir;
+    /**
+     * 压缩使用的字典版本，0表示不使用字典，必须显式指定
+     */
+    @Value("${rpc.compress.zstd.dictionary-version:0}")
+    private int dictionaryVersion;
+    /**
+     * 每N条消息采样一条，0表示不采样
+     */
+    @Value("${rpc.compress.zstd.sample-rate:0}")
+    private int sampleRate;
+    /**
+     * 最多采样数量
+     */
+    @Value("${rpc.compress.zstd.max-samples:10000}")
+    private int maxSamples;
+    /**
+     * 样本目录
+     */
+    @Value("${rpc.compress.zstd.sample-dir:samples}")
+    private String sampleDir;
+
+    private ScheduledExecutorService sampleExecutor;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if(dictionaryVersion < 0){
+            throw new IllegalArgumentException("rpc.compress.zstd.dictionary-version must not be negative: " + dictionaryVersion);
+        }
+        if(!dictionaryDir.isEmpty()){
+            loadDictionaries(Paths.get(dictionaryDir));
+        }
+        else if(dictionaryVersion != 0){
+            throw new IllegalArgumentException("rpc.compress.zstd.dictionary-version requires rpc.compress.zstd.dictionary-dir");
+        }
+        if(sampleRate > 0){
+            Files.createDirectories(Paths.get(sampleDir));
+            DictionarySampler.start(sampleRate, maxSamples);
+            sampleExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("rpc-dict-sampler", true));
+            sampleExecutor.scheduleWithFixedDelay(this::flushSamples, SAMPLE_FLUSH_SECONDS, SAMPLE_FLUSH_SECONDS, TimeUnit.SECONDS);
+            log.info("开启Zstd字典样本采样，采样率：1/{}，样本目录：{}", sampleRate, sampleDir);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        if(sampleExecutor != null){
+            DictionarySampler.stop();
+            sampleExecutor.shutdownNow();
+            flushSamples();
+        }
+    }
+
+    private void loadDictionaries(Path dir) throws IOException {
+        Map<Integer, ZstdDictionaries.Dictionary> loaded = new HashMap<>(16);
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + DICTIONARY_SUFFIX)){
+            for(Path file : files){
+                String name = file.getFileName().toString();
+                int version = Integer.parseInt(name.substring(0, name.length() - DICTIONARY_SUFFIX.length()));
+                if(version <= 0){
+                    throw new IllegalArgumentException("zstd dictionary version must be positive: " + file);
+                }
+                loaded.put(version, new ZstdDictionaries.Dictionary(version, Files.readAllBytes(file), ZstdDictCompressor.LEVEL));
+            }
+        }
+        ZstdDictionaries.update(loaded, dictionaryVersion);
+        log.info("加载Zstd字典：{}，压缩使用版本：{}", loaded.keySet(), dictionaryVersion);
+    }
+
+    /**
+     * 把已采集的样本追加写入新的样本文件
+     */
+    private void flushSamples(){
+        List<byte[]> samples = DictionarySampler.drain();
+        if(samples.isEmpty()){
+            return;
+        }
+        Path file = Paths.get(sampleDir, "samples-" + System.currentTimeMillis() + ".bin");
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))){
+            for(byte[] sample : samples){
+                out.writeInt(sample.length);
+                out.write(sample);
+            }
+            log.info("写入Zstd字典样本：{}，数量：{}", file, samples.size());
+        }catch (IOException e){
+            log.warn("写入Zstd字典样本失败：{}", file, e);
+        }
+    }
+}
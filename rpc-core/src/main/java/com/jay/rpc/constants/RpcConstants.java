@@ -33,14 +33,28 @@ public class RpcConstants {
     public static final byte TYPE_RESPONSE = 2;
     public static final byte TYPE_HEARTBEAT_REQUEST = 3;
     public static final byte TYPE_HEARTBEAT_RESPONSE = 4;
+    /**
+     * 方法表协商，客户端建立连接后请求服务端的方法表
+     */
+    public static final byte TYPE_METHOD_TABLE_REQUEST = 5;
+    public static final byte TYPE_METHOD_TABLE_RESPONSE = 6;
 
     /**
      * 报文最长长度 4 MB
      */
     public static final int MAX_MESSAGE_LENGTH = 4 * 1024 * 1024;
+    /**
+     * 数据部分解压后的最大长度，压缩数据中记录的原始长度超过该值时拒绝解压，避免按对端声明的长度分配内存
+     */
+    public static final int MAX_DECOMPRESSED_LENGTH = 4 * MAX_MESSAGE_LENGTH;
 
     /**
      * 是否关闭data压缩
      */
     public static final byte COMPRESS_OFF = 0;
+    /**
+     * compress字段最高位：数据部分小于压缩阈值或压缩后变大，未压缩
+     * 低7位保留期望的压缩方式，对端返回响应时使用
+     */
+    public static final byte COMPRESS_SKIPPED = (byte) 0x80;
 }
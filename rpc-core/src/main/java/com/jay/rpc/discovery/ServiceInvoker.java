@@ -0,0 +1,85 @@
+package com.jay.rpc.discovery;
+
+import com.jay.rpc.entity.MethodTable;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+
+/**
+ * <p>
+ *  服务方法调用器
+ *  在服务扫描时为每个接口方法生成绑定了实现类Bean的MethodHandle
+ *  调用时直接invokeExact，不需要每次getMethod查找和Method.invoke的访问检查
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/1
+ **/
+public class ServiceInvoker {
+    /**
+     * 调用类型：(Object[])Object
+     */
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    /**
+     * 接口方法
+     */
+    private final Method method;
+    /**
+     * 绑定Bean，参数展开的MethodHandle
+     */
+    private final MethodHandle handle;
+    /**
+     * 响应中的返回值类型，void方法使用Object
+     */
+    private final Class<?> returnType;
+    /**
+     * 参数类型，查表时匹配重载方法
+     */
+    private final Class<?>[] parameterTypes;
+    /**
+     * 方法签名
+     * @see MethodTable#signature(Class, String, Class[])
+     */
+    private final String signature;
+
+    public ServiceInvoker(Class<?> service, Method method, Object bean) throws IllegalAccessException {
+        this.method = method;
+        this.handle = MethodHandles.publicLookup()
+                .unreflect(method)
+                .bindTo(bean)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(INVOKER_TYPE);
+        this.returnType = method.getReturnType() == Void.TYPE ? Object.class : method.getReturnType();
+        this.parameterTypes = method.getParameterTypes();
+        this.signature = MethodTable.signature(service, method.getName(), parameterTypes);
+    }
+
+    /**
+     * 调用服务方法，方法抛出的异常原样抛出
+     * @param args 参数
+     * @return 返回值
+     * @throws Throwable 方法异常
+     */
+    public Object invoke(Object[] args) throws Throwable {
+        return (Object) handle.invokeExact(args);
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Class<?> getReturnType() {
+        return returnType;
+    }
+
+    public Class<?>[] getParameterTypes() {
+        return parameterTypes;
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+}
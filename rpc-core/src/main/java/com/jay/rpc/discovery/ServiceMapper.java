@@ -1,12 +1,25 @@
 package com.jay.rpc.discovery;
 
+import com.jay.rpc.entity.MethodTable;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * <p>
  *     服务接口-实现类实例 映射
  *     因为无法直接通过接口获取到实现类的Bean
- *     所以在启动时通过扫描带有@RpcService注解的Bean作为实现类，并记录在该Map中
+ *     所以在启动时通过扫描带有@RpcService的Bean作为实现类，并记录在该Map中
+ *
+ *     扫描完成后调用buildInvokers，为每个接口方法生成ServiceInvoker
+ *     调用表生成后不再修改，处理请求时只需要查表，不需要反射查找方法
+ *     同时按方法签名排序分配方法ID，客户端协商方法表后只需要传输方法ID
  * </p>
  *
  * @author Jay
@@ -19,6 +32,22 @@ public class ServiceMapper {
      */
     private static final HashMap<Class<?>, Object> SERVICE_INSTANCES = new HashMap<>(256);
 
+    private static final Class<?>[] NO_PARAMETERS = new Class<?>[0];
+
+    /**
+     * 调用表：接口 -> 方法名 -> 同名方法的调用器
+     * 同名方法一般只有一个，有重载时按参数类型匹配
+     */
+    private static volatile Map<Class<?>, Map<String, ServiceInvoker[]>> INVOKERS = Collections.emptyMap();
+    /**
+     * 按方法签名排序的调用器，下标即方法ID
+     */
+    private static volatile ServiceInvoker[] INVOKER_TABLE = new ServiceInvoker[0];
+    /**
+     * 发送给客户端的方法表
+     */
+    private static volatile MethodTable METHOD_TABLE = new MethodTable(Collections.emptyList());
+
     /**
      * 获取服务接口的实现Bean
      * @param service 接口
@@ -39,4 +68,85 @@ public class ServiceMapper {
     public static Object getServiceImpl(Class<?> service){
         return SERVICE_INSTANCES.get(service);
     }
+
+    /**
+     * 根据已扫描的服务生成调用表
+     * 在服务扫描完成后、服务器启动前调用
+     * @return 方法数量
+     */
+    public static synchronized int buildInvokers(){
+        Map<Class<?>, Map<String, ServiceInvoker[]>> invokers = new HashMap<>(SERVICE_INSTANCES.size() * 2);
+        List<ServiceInvoker> all = new ArrayList<>(256);
+        for (Map.Entry<Class<?>, Object> entry : SERVICE_INSTANCES.entrySet()) {
+            Class<?> service = entry.getKey();
+            Map<String, List<ServiceInvoker>> methods = new HashMap<>(32);
+            for (Method method : service.getMethods()) {
+                try{
+                    ServiceInvoker invoker = new ServiceInvoker(service, method, entry.getValue());
+                    methods.computeIfAbsent(method.getName(), k -> new ArrayList<>(1)).add(invoker);
+                    all.add(invoker);
+                }catch (IllegalAccessException e){
+                    throw new RuntimeException("无法生成服务方法调用器，方法：" + method, e);
+                }
+            }
+            Map<String, ServiceInvoker[]> table = new HashMap<>(methods.size() * 2);
+            for (Map.Entry<String, List<ServiceInvoker>> methodEntry : methods.entrySet()) {
+                table.put(methodEntry.getKey(), methodEntry.getValue().toArray(new ServiceInvoker[0]));
+            }
+            invokers.put(service, Collections.unmodifiableMap(table));
+        }
+        // 按签名排序分配方法ID
+        all.sort(Comparator.comparing(ServiceInvoker::getSignature));
+        List<String> signatures = new ArrayList<>(all.size());
+        for (ServiceInvoker invoker : all) {
+            signatures.add(invoker.getSignature());
+        }
+        INVOKERS = Collections.unmodifiableMap(invokers);
+        INVOKER_TABLE = all.toArray(new ServiceInvoker[0]);
+        METHOD_TABLE = new MethodTable(Collections.unmodifiableList(signatures));
+        return all.size();
+    }
+
+    /**
+     * 查找服务方法调用器
+     * @param service 服务接口
+     * @param methodName 方法名
+     * @param parameterTypes 参数类型
+     * @return ServiceInvoker，不存在返回null
+     */
+    public static ServiceInvoker getInvoker(Class<?> service, String methodName, Class<?>[] parameterTypes){
+        Map<String, ServiceInvoker[]> table = INVOKERS.get(service);
+        if(table == null){
+            return null;
+        }
+        ServiceInvoker[] candidates = table.get(methodName);
+        if(candidates == null){
+            return null;
+        }
+        Class<?>[] types = parameterTypes == null ? NO_PARAMETERS : parameterTypes;
+        for (ServiceInvoker candidate : candidates) {
+            if(Arrays.equals(candidate.getParameterTypes(), types)){
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 通过方法ID查找调用器
+     * @param methodId 方法ID
+     * @return ServiceInvoker，ID不存在返回null
+     */
+    public static ServiceInvoker getInvoker(int methodId){
+        ServiceInvoker[] table = INVOKER_TABLE;
+        return methodId >= 0 && methodId < table.length ? table[methodId] : null;
+    }
+
+    /**
+     * 获取方法表
+     * @return MethodTable
+     */
+    public static MethodTable getMethodTable(){
+        return METHOD_TABLE;
+    }
 }
@@ -0,0 +1,49 @@
+package com.jay.rpc.entity;
+
+import lombok.*;
+
+import java.util.List;
+
+/**
+ * <p>
+ *  方法表
+ *  服务端在服务扫描后为每个方法分配ID，ID即方法签名在signatures中的下标
+ *  客户端建立连接后请求方法表，之后该连接上的请求只携带方法ID和参数，
+ *  不再传输接口、方法名和参数类型
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/2
+ **/
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Getter
+@Setter
+public class MethodTable {
+    /**
+     * 方法签名列表
+     */
+    private List<String> signatures;
+
+    /**
+     * 方法签名，格式：接口全名#方法名(参数类型,参数类型)
+     * @param service 服务接口
+     * @param methodName 方法名
+     * @param parameterTypes 参数类型
+     * @return 方法签名
+     */
+    public static String signature(Class<?> service, String methodName, Class<?>[] parameterTypes){
+        StringBuilder builder = new StringBuilder(64);
+        builder.append(service.getName()).append('#').append(methodName).append('(');
+        if(parameterTypes != null){
+            for(int i = 0; i < parameterTypes.length; i++){
+                if(i > 0){
+                    builder.append(',');
+                }
+                builder.append(parameterTypes[i].getName());
+            }
+        }
+        return builder.append(')').toString();
+    }
+}
@@ -17,11 +17,6 @@ import lombok.*;
 @Getter
 @Setter
 public class RpcRequest {
-    /**
-     * 请求ID，UUID
-     * @see com.jay.rpc.client.RpcProxy
-     */
-    private String requestId;
     /**
      * 目标接口
      */
@@ -38,4 +33,19 @@ public class RpcRequest {
      * 参数
      */
     private Object[] parameters;
+    /**
+     * 方法ID，连接上协商过方法表后使用
+     * 不为null时，targetClass、methodName、parameterTypes不再传输
+     * @see MethodTable
+     */
+    private Integer methodId;
+    /**
+     * 方法签名，客户端用于查找方法ID，不参与序列化
+     */
+    private transient String methodKey;
+    /**
+     * 参数类型都是基本类型、包装类型、String或byte[]，可以使用快速序列化，不参与序列化
+     * @see com.jay.rpc.transport.serialize.primitive.PrimitiveSerializer
+     */
+    private transient boolean primitiveParameters;
 }
@@ -16,10 +16,6 @@ import lombok.*;
 @Getter
 @Builder
 public class RpcResponse {
-    /**
-     * 对应请求ID
-     */
-    private String requestId;
     /**
      * 方法抛出异常
      */
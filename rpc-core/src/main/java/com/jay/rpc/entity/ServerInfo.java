@@ -39,4 +39,8 @@ public class ServerInfo {
      * CPUs
      */
     private int availableProcessors;
+    /**
+     * 配置的权重，0表示根据CPU数量计算
+     */
+    private int weight;
 }
@@ -14,16 +14,33 @@ import java.util.List;
  **/
 public abstract class AbstractLoadBalancer implements LoadBalancer {
     @Override
-    public InetSocketAddress selectAddress(List<InetSocketAddress> addresses, String applicationName, String requestId) {
+    public InetSocketAddress selectAddress(List<InetSocketAddress> addresses, String applicationName, int requestId) {
+        return selectAddress(addresses, applicationName, requestId, null);
+    }
+
+    @Override
+    public InetSocketAddress selectAddress(List<InetSocketAddress> addresses, String applicationName, int requestId, Object routeKey) {
         if(addresses == null || addresses.isEmpty()){
-            throw new NullPointerException();
+            throw new IllegalStateException("没有可用的服务地址：" + applicationName);
         }
         // 候选服务器只有一个，直接返回该服务器
         if(addresses.size() == 1){
             return addresses.get(0);
         }
-        return doSelect(addresses, applicationName, requestId);
+        return doSelect(addresses, applicationName, requestId, routeKey);
     }
 
-    public abstract InetSocketAddress doSelect(List<InetSocketAddress> addresses, String applicationName, String requestId);
+    public abstract InetSocketAddress doSelect(List<InetSocketAddress> addresses, String applicationName, int requestId);
+
+    /**
+     * 根据路由key选择，默认忽略路由key
+     * @param addresses 地址列表
+     * @param applicationName 服务名
+     * @param requestId requestId
+     * @param routeKey 路由key，可能为null
+     * @return InetSocketAddress
+     */
+    public InetSocketAddress doSelect(List<InetSocketAddress> addresses, String applicationName, int requestId, Object routeKey){
+        return doSelect(addresses, applicationName, requestId);
+    }
 }
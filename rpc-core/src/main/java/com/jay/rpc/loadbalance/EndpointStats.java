@@ -0,0 +1,190 @@
+package com.jay.rpc.loadbalance;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ *  客户端统计的服务地址状态
+ *  RpcClient在发送请求和请求完成时记录，负载均衡器根据在途请求数和响应时间选择地址
+ *
+ *  响应时间使用Peak EWMA：
+ *  新样本大于当前值时直接取新样本，快速感知变慢的节点；
+ *  否则按距离上次更新的时间指数衰减，一段时间没有请求的节点会逐渐恢复
+ *  没有样本的新节点使用默认响应时间，不会因为代价为0吸收所有请求；
+ *  有在途请求时不衰减，空闲后衰减的节点在第一个响应返回前不会被当作最优节点；
+ *  失败的请求（连接失败、发送失败、超时）至少按惩罚时间记录，快速失败的节点不会因为响应时间短而被优先选择
+ *
+ *  同时记录服务地址目录根据主机信息计算的权重，以及地址出现的时间，用于预热
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/4
+ **/
+public class EndpointStats {
+    /**
+     * EWMA衰减时间常数
+     */
+    private static final long DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+    /**
+     * 没有样本时的默认响应时间
+     */
+    private static final long DEFAULT_RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    /**
+     * 失败请求记录的响应时间
+     */
+    private static final long PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final ConcurrentHashMap<InetSocketAddress, EndpointStats> STATS = new ConcurrentHashMap<>(16);
+
+    /**
+     * 在途请求数
+     */
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    /**
+     * 响应时间EWMA，纳秒
+     */
+    private double ewmaNanos = DEFAULT_RTT_NANOS;
+    /**
+     * 是否已经有响应时间样本
+     */
+    private boolean sampled;
+    /**
+     * 上次更新EWMA的时间
+     */
+    private long lastUpdateNanos = System.nanoTime();
+    /**
+     * 权重，由主机信息计算，默认1
+     */
+    private volatile int weight = 1;
+    /**
+     * 地址出现在服务地址目录中的时间，0表示不需要预热
+     */
+    private volatile long appearNanos = 0;
+
+    /**
+     * 获取地址的统计信息
+     * @param address 地址
+     * @return EndpointStats
+     */
+    public static EndpointStats of(InetSocketAddress address){
+        EndpointStats stats = STATS.get(address);
+        if(stats == null){
+            stats = STATS.computeIfAbsent(address, k -> new EndpointStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 请求开始
+     * @return 开始时间，请求结束时传给end
+     */
+    public long begin(){
+        inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    /**
+     * 请求成功结束
+     * @param startNanos begin返回的开始时间
+     */
+    public void end(long startNanos){
+        end(startNanos, false);
+    }
+
+    /**
+     * 请求结束
+     * @param startNanos begin返回的开始时间
+     * @param failed 是否失败，失败时至少按惩罚时间记录
+     */
+    public void end(long startNanos, boolean failed){
+        inFlight.decrementAndGet();
+        long now = System.nanoTime();
+        long rtt = now - startNanos;
+        if(failed){
+            rtt = Math.max(rtt, PENALTY_NANOS);
+        }
+        synchronized (this){
+            if(!sampled){
+                // 第一个样本替换默认值
+                ewmaNanos = rtt;
+                sampled = true;
+            }
+            else if(rtt > ewmaNanos){
+                ewmaNanos = rtt;
+            }
+            else{
+                double weight = Math.exp(-(double) (now - lastUpdateNanos) / DECAY_NANOS);
+                ewmaNanos = ewmaNanos * weight + rtt * (1 - weight);
+            }
+            lastUpdateNanos = now;
+        }
+    }
+
+    /**
+     * 在途请求数
+     * @return int
+     */
+    public int getInFlight(){
+        return inFlight.get();
+    }
+
+    /**
+     * 当前的响应时间EWMA
+     * 没有样本时返回默认响应时间，有在途请求时不衰减，否则按距离上次更新的时间衰减
+     * @return 纳秒
+     */
+    public synchronized double getEwmaNanos(){
+        if(!sampled || getInFlight() > 0){
+            return ewmaNanos;
+        }
+        double elapsed = System.nanoTime() - lastUpdateNanos;
+        return ewmaNanos * Math.exp(-elapsed / DECAY_NANOS);
+    }
+
+    public int getWeight(){
+        return weight;
+    }
+
+    public void setWeight(int weight){
+        this.weight = Math.max(1, weight);
+    }
+
+    /**
+     * 地址新出现，从现在开始预热
+     */
+    public void markAppeared(){
+        this.appearNanos = System.nanoTime();
+    }
+
+    /**
+     * 预热期间的权重，从1/10线性增长到完整权重
+     * @param warmupNanos 预热时长
+     * @return 当前权重，至少为1
+     */
+    public int getWarmedWeight(long warmupNanos){
+        int full = weight;
+        long appear = appearNanos;
+        if(appear == 0 || warmupNanos <= 0){
+            return full;
+        }
+        long elapsed = System.nanoTime() - appear;
+        if(elapsed >= warmupNanos){
+            // 预热结束，之后不再计算
+            appearNanos = 0;
+            return full;
+        }
+        double ratio = Math.max(0.1, (double) elapsed / warmupNanos);
+        return Math.max(1, (int) (full * ratio));
+    }
+
+    /**
+     * 负载代价 = 响应时间 * (在途请求数 + 1)
+     * @return double
+     */
+    public double getCost(){
+        return getEwmaNanos() * (getInFlight() + 1);
+    }
+}
@@ -16,8 +16,21 @@ public interface LoadBalancer {
      * 选择地址
      * @param addresses 地址列表
      * @param applicationName 目标应用名称
-     * @param requestId requestId 可以根据requestId选择服务器
+     * @param requestId 报文头部requestId 可以根据requestId选择服务器
      * @return InetSocketAddress
      */
-    InetSocketAddress selectAddress(List<InetSocketAddress> addresses, String applicationName, String requestId);
+    InetSocketAddress selectAddress(List<InetSocketAddress> addresses, String applicationName, int requestId);
+
+    /**
+     * 根据路由key选择地址
+     * 不使用路由key的负载均衡器忽略该参数
+     * @param addresses 地址列表
+     * @param applicationName 目标应用名称
+     * @param requestId 报文头部requestId
+     * @param routeKey 路由key，null表示没有
+     * @return InetSocketAddress
+     */
+    default InetSocketAddress selectAddress(List<InetSocketAddress> addresses, String applicationName, int requestId, Object routeKey){
+        return selectAddress(addresses, applicationName, requestId);
+    }
 }
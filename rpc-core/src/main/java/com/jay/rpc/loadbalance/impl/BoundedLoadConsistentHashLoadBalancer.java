@@ -0,0 +1,65 @@
+package com.jay.rpc.loadbalance.impl;
+
+import com.jay.rpc.loadbalance.AbstractLoadBalancer;
+import com.jay.rpc.loadbalance.EndpointStats;
+
+import java.net.InetSocketAddress;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * <p>
+ *  有界负载一致性Hash
+ *  在一致性Hash的基础上限制每个地址的在途请求数不超过 (1 + ε) * 平均值
+ *  hash命中的地址已满时，沿hash环顺时针找到第一个未满的地址
+ *  未满时与一致性Hash结果相同，保留缓存亲和性；热点key只会溢出到环上相邻的节点
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/5
+ **/
+public class BoundedLoadConsistentHashLoadBalancer extends AbstractLoadBalancer {
+    /**
+     * 允许超出平均负载的比例
+     */
+    private static final double EPSILON = 0.25;
+
+    @Override
+    public InetSocketAddress doSelect(List<InetSocketAddress> addresses, String applicationName, int requestId) {
+        return doSelect(addresses, applicationName, requestId, null);
+    }
+
+    @Override
+    public InetSocketAddress doSelect(List<InetSocketAddress> addresses, String applicationName, int requestId, Object routeKey) {
+        ConsistentHashLoadBalancer.ConsistentHashSelector selector = ConsistentHashLoadBalancer.getSelector(applicationName, addresses);
+        long hash = ConsistentHashLoadBalancer.hash(requestId, routeKey);
+        // 负载上限，包括本次请求
+        long totalInFlight = 1;
+        for (InetSocketAddress address : addresses) {
+            totalInFlight += EndpointStats.of(address).getInFlight();
+        }
+        double capacity = Math.ceil((1 + EPSILON) * totalInFlight / addresses.size());
+
+        int start = selector.locate(hash);
+        int size = selector.size();
+        int addressCount = selector.addressCount();
+        // 已检查过的地址，每个地址只检查一次，检查完所有地址后停止
+        BitSet visited = new BitSet(addressCount);
+        int visitedCount = 0;
+        for(int i = 0; i < size && visitedCount < addressCount; i++){
+            int index = (start + i) % size;
+            int owner = selector.ownerIndexAt(index);
+            if(visited.get(owner)){
+                continue;
+            }
+            visited.set(owner);
+            visitedCount++;
+            InetSocketAddress candidate = selector.ownerAt(index);
+            if(EndpointStats.of(candidate).getInFlight() < capacity){
+                return candidate;
+            }
+        }
+        // 并发请求使所有地址都已满，退回一致性Hash结果
+        return selector.ownerAt(start);
+    }
+}
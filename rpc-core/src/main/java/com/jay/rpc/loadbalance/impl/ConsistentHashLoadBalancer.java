@@ -1,68 +1,209 @@
 package com.jay.rpc.loadbalance.impl;
 
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.jay.rpc.client.RouteKeyExtractor;
 import com.jay.rpc.loadbalance.AbstractLoadBalancer;
 
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>
  *  一致性Hash算法
+ *  每个地址在hash环上放置多个虚拟节点，使用murmur3计算hash，分布更均匀
+ *  hash环保存为排序的long数组，查找时二分搜索，不需要加锁
+ *  地址列表变化时重新生成该服务的hash环
+ *  请求带有路由key时根据key计算hash，否则使用requestId
  * </p>
  *
  * @author Jay
  * @date 2021/11/22
  **/
 public class ConsistentHashLoadBalancer extends AbstractLoadBalancer {
+    /**
+     * 每个地址的虚拟节点数
+     */
+    static final int VIRTUAL_NODES = 160;
+
+    static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
 
     private static final ConcurrentHashMap<String, ConsistentHashSelector> SELECTOR_HOLDER = new ConcurrentHashMap<>();
 
     @Override
-    public InetSocketAddress doSelect(List<InetSocketAddress> addresses, String applicationName, String requestId) {
-        // 获取该服务的选择器
+    public InetSocketAddress doSelect(List<InetSocketAddress> addresses, String applicationName, int requestId) {
+        return doSelect(addresses, applicationName, requestId, null);
+    }
+
+    @Override
+    public InetSocketAddress doSelect(List<InetSocketAddress> addresses, String applicationName, int requestId, Object routeKey) {
+        return getSelector(applicationName, addresses).select(hash(requestId, routeKey));
+    }
+
+    /**
+     * 请求hash，有路由key时使用路由key，同一个key总是选中同一个地址
+     * 路由key按值计算hash，不使用hashCode，不同客户端进程的结果一致
+     * @param requestId requestId
+     * @param routeKey 路由key
+     * @return hash
+     * @see RouteKeyExtractor#isSupportedType(Class)
+     */
+    static long hash(int requestId, Object routeKey){
+        if(routeKey == null){
+            return HASH_FUNCTION.hashInt(requestId).asLong();
+        }
+        if(routeKey instanceof CharSequence){
+            return HASH_FUNCTION.hashString((CharSequence) routeKey, StandardCharsets.UTF_8).asLong();
+        }
+        if(routeKey instanceof Long || routeKey instanceof Integer || routeKey instanceof Short || routeKey instanceof Byte
+                || routeKey instanceof AtomicLong || routeKey instanceof AtomicInteger){
+            return HASH_FUNCTION.hashLong(((Number) routeKey).longValue()).asLong();
+        }
+        if(routeKey instanceof Double || routeKey instanceof Float){
+            return HASH_FUNCTION.hashLong(Double.doubleToLongBits(((Number) routeKey).doubleValue())).asLong();
+        }
+        if(routeKey instanceof Number){
+            // BigInteger、BigDecimal等按十进制字符串
+            return HASH_FUNCTION.hashString(routeKey.toString(), StandardCharsets.UTF_8).asLong();
+        }
+        if(routeKey instanceof Enum){
+            return HASH_FUNCTION.hashString(((Enum<?>) routeKey).name(), StandardCharsets.UTF_8).asLong();
+        }
+        if(routeKey instanceof Character){
+            return HASH_FUNCTION.hashLong((Character) routeKey).asLong();
+        }
+        if(routeKey instanceof Boolean){
+            return HASH_FUNCTION.hashLong((Boolean) routeKey ? 1 : 0).asLong();
+        }
+        throw new IllegalArgumentException("路由key类型不支持：" + routeKey.getClass().getName() + "，需要通过RouteKeyExtractor提取String或Number");
+    }
+
+    /**
+     * 获取该服务的选择器，地址列表变化时重新生成
+     * @param applicationName 服务名
+     * @param addresses 地址列表
+     * @return ConsistentHashSelector
+     */
+    static ConsistentHashSelector getSelector(String applicationName, List<InetSocketAddress> addresses){
         ConsistentHashSelector selector = SELECTOR_HOLDER.get(applicationName);
-        // 选择器不存在，新建选择器
-        if(selector == null){
+        // 选择器不存在或地址列表已变化，新建选择器
+        if(selector == null || !selector.matches(addresses)){
             selector = new ConsistentHashSelector(addresses);
             SELECTOR_HOLDER.put(applicationName, selector);
         }
-        return selector.select(requestId);
+        return selector;
     }
 
-
     static class ConsistentHashSelector{
-        private final TreeMap<Long, InetSocketAddress> hashCircle;
-
-        public ConsistentHashSelector(List<InetSocketAddress> addresses){
-            this.hashCircle = new TreeMap<>();
-            // 把所有地址写入hash环
-            for(InetSocketAddress address : addresses){
-                long hashcode = hash(address.toString());
-                hashCircle.put(hashcode, address);
+        /**
+         * 生成hash环时的地址列表
+         */
+        private final List<InetSocketAddress> addresses;
+        /**
+         * 排序后的虚拟节点hash
+         */
+        private final long[] points;
+        /**
+         * 虚拟节点对应的地址，与points下标一一对应
+         */
+        private final InetSocketAddress[] owners;
+        /**
+         * 虚拟节点对应的地址在地址列表中的下标
+         */
+        private final int[] ownerIndexes;
+
+        ConsistentHashSelector(List<InetSocketAddress> addresses){
+            this.addresses = addresses;
+            int size = addresses.size() * VIRTUAL_NODES;
+            long[] hashes = new long[size];
+            int[] nodes = new int[size];
+            int index = 0;
+            // 把所有地址的虚拟节点写入hash环
+            for(int n = 0; n < addresses.size(); n++){
+                InetSocketAddress address = addresses.get(n);
+                String key = address.getHostString() + ":" + address.getPort() + "#";
+                for(int i = 0; i < VIRTUAL_NODES; i++){
+                    hashes[index] = HASH_FUNCTION.hashString(key + i, StandardCharsets.UTF_8).asLong();
+                    nodes[index] = n;
+                    index++;
+                }
+            }
+            // 按hash排序
+            Integer[] order = new Integer[size];
+            for(int i = 0; i < size; i++){
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> hashes[i]));
+            this.points = new long[size];
+            this.owners = new InetSocketAddress[size];
+            this.ownerIndexes = new int[size];
+            for(int i = 0; i < size; i++){
+                points[i] = hashes[order[i]];
+                ownerIndexes[i] = nodes[order[i]];
+                owners[i] = addresses.get(ownerIndexes[i]);
             }
         }
 
+        /**
+         * hash环是否由该地址列表生成
+         * 服务地址目录在地址不变时返回同一个列表，通常只需要比较引用
+         * @param addresses 地址列表
+         * @return boolean
+         */
+        boolean matches(List<InetSocketAddress> addresses){
+            return this.addresses == addresses || this.addresses.equals(addresses);
+        }
 
         /**
-         * 使用一致性hash算法，通过requestId来分配服务器
-         * @param requestId requestId
-         * @return InetSocketAddress
+         * 找到顺时针方向第一个大于等于hash的虚拟节点
+         * @param hash hash
+         * @return 虚拟节点下标
          */
-        public InetSocketAddress select(String requestId){
-            long hashcode = hash(requestId);
-
-            // 找到大于等于的hashcode的keys的第一个
-            Map.Entry<Long, InetSocketAddress> firstEntry = hashCircle.tailMap(hashcode, true).firstEntry();
-            // 不存在，表示没有比hashcode大的，返回hash环的第一个节点
-            if(firstEntry == null){
-                firstEntry = hashCircle.firstEntry();
+        int locate(long hash){
+            int index = Arrays.binarySearch(points, hash);
+            if(index < 0){
+                index = -(index + 1);
             }
-            return firstEntry.getValue();
+            // 没有比hash大的节点，回到hash环的第一个节点
+            return index == points.length ? 0 : index;
+        }
+
+        /**
+         * 使用一致性hash算法选择服务器
+         * @param hash 请求hash
+         * @return InetSocketAddress
+         */
+        InetSocketAddress select(long hash){
+            return owners[locate(hash)];
+        }
+
+        InetSocketAddress ownerAt(int index){
+            return owners[index];
+        }
+
+        /**
+         * 虚拟节点对应的地址在地址列表中的下标
+         * @param index 虚拟节点下标
+         * @return 地址下标
+         */
+        int ownerIndexAt(int index){
+            return ownerIndexes[index];
+        }
+
+        /**
+         * 不同地址的数量
+         * @return int
+         */
+        int addressCount(){
+            return addresses.size();
         }
 
-        private long hash(String str){
-            return str.hashCode();
+        int size(){
+            return points.length;
         }
     }
 }
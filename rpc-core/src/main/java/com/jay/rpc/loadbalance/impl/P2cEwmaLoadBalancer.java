@@ -0,0 +1,36 @@
+package com.jay.rpc.loadbalance.impl;
+
+import com.jay.rpc.loadbalance.AbstractLoadBalancer;
+import com.jay.rpc.loadbalance.EndpointStats;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>
+ *  EWMA + 二选一负载均衡
+ *  随机选出两个不同的地址，选择负载代价（响应时间EWMA * (在途请求数 + 1)）较小的一个
+ *  变慢或者GC停顿的节点响应时间和在途请求数上升，很快就不再被选中
+ *  只比较两个随机候选，避免所有客户端同时涌向同一个最优节点
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/4
+ **/
+public class P2cEwmaLoadBalancer extends AbstractLoadBalancer {
+    @Override
+    public InetSocketAddress doSelect(List<InetSocketAddress> addresses, String applicationName, int requestId) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = addresses.size();
+        int first = random.nextInt(size);
+        // 在剩下的地址中选第二个，保证两个候选不同
+        int second = random.nextInt(size - 1);
+        if(second >= first){
+            second++;
+        }
+        InetSocketAddress a = addresses.get(first);
+        InetSocketAddress b = addresses.get(second);
+        return EndpointStats.of(a).getCost() <= EndpointStats.of(b).getCost() ? a : b;
+    }
+}
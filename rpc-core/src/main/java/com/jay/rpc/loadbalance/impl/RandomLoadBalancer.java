@@ -18,7 +18,7 @@ import java.util.Random;
 public class RandomLoadBalancer extends AbstractLoadBalancer {
 
     @Override
-    public InetSocketAddress doSelect(List<InetSocketAddress> addresses, String applicationName, String requestId) {
+    public InetSocketAddress doSelect(List<InetSocketAddress> addresses, String applicationName, int requestId) {
         Random random = new Random();
         // 从addresses列表随机选择一个地址
         return addresses.get(random.nextInt(addresses.size()));
@@ -0,0 +1,79 @@
+package com.jay.rpc.loadbalance.impl;
+
+import com.jay.rpc.loadbalance.AbstractLoadBalancer;
+import com.jay.rpc.loadbalance.EndpointStats;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *  平滑加权轮询
+ *  权重来自注册中心发布的主机信息（配置的权重或CPU数量），由服务地址目录写入EndpointStats
+ *  每次选择时所有地址的当前值加上自身权重，选出当前值最大的地址，再减去权重总和
+ *  权重大的地址被选中的次数多，且不会连续集中选中
+ *
+ *  新出现的地址在预热时间内权重从1/10线性增长，避免刚启动、JIT未完成的JVM承受全部流量
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/7
+ **/
+public class WeightedRoundRobinLoadBalancer extends AbstractLoadBalancer {
+    /**
+     * 预热时长
+     */
+    private static final long WARMUP_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private static final ConcurrentHashMap<String, WeightedSelector> SELECTOR_HOLDER = new ConcurrentHashMap<>();
+
+    @Override
+    public InetSocketAddress doSelect(List<InetSocketAddress> addresses, String applicationName, int requestId) {
+        WeightedSelector selector = SELECTOR_HOLDER.get(applicationName);
+        // 地址列表变化时重新生成，当前值清零
+        if(selector == null || !selector.matches(addresses)){
+            selector = new WeightedSelector(addresses);
+            SELECTOR_HOLDER.put(applicationName, selector);
+        }
+        return selector.select();
+    }
+
+    static class WeightedSelector {
+        private final List<InetSocketAddress> addresses;
+        private final EndpointStats[] stats;
+        /**
+         * 每个地址的当前值
+         */
+        private final long[] current;
+
+        WeightedSelector(List<InetSocketAddress> addresses){
+            this.addresses = addresses;
+            this.stats = new EndpointStats[addresses.size()];
+            for(int i = 0; i < stats.length; i++){
+                stats[i] = EndpointStats.of(addresses.get(i));
+            }
+            this.current = new long[addresses.size()];
+        }
+
+        boolean matches(List<InetSocketAddress> addresses){
+            return this.addresses == addresses || this.addresses.equals(addresses);
+        }
+
+        synchronized InetSocketAddress select(){
+            long total = 0;
+            int best = 0;
+            for(int i = 0; i < current.length; i++){
+                int weight = stats[i].getWarmedWeight(WARMUP_NANOS);
+                current[i] += weight;
+                total += weight;
+                if(current[i] > current[best]){
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            return addresses.get(best);
+        }
+    }
+}
@@ -4,7 +4,9 @@ import com.jay.rpc.entity.ServerInfo;
 import com.jay.rpc.entity.ServiceInfo;
 
 import java.net.InetSocketAddress;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -17,6 +19,10 @@ public abstract class Registry {
 
     protected ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> new Thread(r, "heart-beat"));
     protected int heartBeatTime = 30;
+    /**
+     * 注册时发布的权重，0表示由客户端根据CPU数量计算
+     */
+    protected int weight = 0;
     /**
      * 获取服务地址
      * @param serviceName 服务名称
@@ -57,12 +63,50 @@ public abstract class Registry {
         executor.scheduleAtFixedRate(()->heartBeat(applicationName, address), heartBeatTime, heartBeatTime, TimeUnit.SECONDS);
     }
 
+    /**
+     * 获取服务下所有地址的主机信息，用于按容量分配权重
+     * 不支持的注册中心返回空Map
+     * @param serviceName 服务名
+     * @return 地址 - 主机信息
+     */
+    public Map<InetSocketAddress, ServerInfo> getServerInfos(String serviceName){
+        return Collections.emptyMap();
+    }
+
+    /**
+     * 监听服务地址变化
+     * 地址发生变化时调用listener，由调用方重新获取地址
+     * 不支持推送的注册中心返回false，调用方需要定时刷新
+     * @param serviceName 服务名
+     * @param listener 变化回调，可能在注册中心的事件线程中执行，不应阻塞
+     * @return 是否支持监听
+     */
+    public boolean watch(String serviceName, Runnable listener){
+        return false;
+    }
+
     public ServerInfo getServerInfo(String address){
         return ServerInfo.builder()
                 .address(address)
                 .lastHeartBeatTime(System.currentTimeMillis())
                 .availableProcessors(Runtime.getRuntime().availableProcessors())
                 .maxMemory(Runtime.getRuntime().maxMemory())
+                .weight(weight)
                 .build();
     }
+
+    public void setWeight(int weight) {
+        this.weight = weight;
+    }
+
+    /**
+     * 解析 ip:port 格式的地址
+     * @param address 地址字符串
+     * @return InetSocketAddress
+     */
+    protected static InetSocketAddress parseAddress(String address){
+        String ip = address.substring(0, address.indexOf(":"));
+        int port = Integer.parseInt(address.substring(address.indexOf(":") + 1));
+        return new InetSocketAddress(ip, port);
+    }
 }
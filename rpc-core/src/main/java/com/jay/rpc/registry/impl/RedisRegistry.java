@@ -8,21 +8,32 @@ import com.jay.rpc.transport.serialize.Serializer;
 import com.jay.rpc.util.RedisUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Tuple;
 
 import javax.annotation.Resource;
 import java.net.InetSocketAddress;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 /**
  * <p>
  * 使用Redis作为服务注册中心
- * 通过Redis的超时key来注册
- * 通过每隔一段时间向Redis重置超时时间的方式心跳检测
+ * 每个服务维护一个有序集合索引，成员是地址，分数是上次心跳时间
+ * 查询地址只需要按分数范围读取有序集合，不使用KEYS扫描，读取时不修改索引
+ * 心跳时间由服务提供者的时钟写入，客户端按自己的时钟过滤，有效期额外加上MAX_CLOCK_SKEW_MILLIS容忍时钟偏差
+ * 过期地址由服务提供者在心跳时清理，避免某个时钟偏快的客户端把存活的地址从共享索引中删除
+ * 主机信息保存在带超时时间的key中，通过pipeline批量读取
+ *
+ * 服务上线、下线通过pub/sub发布，客户端收到后增量刷新该服务的地址
  *
  * key格式：
- * rpc.service.{服务名}.{地址} = 主机信息
+ * rpc.services = 服务名集合
+ * rpc.service.{服务名} = 有序集合，地址 -> 心跳时间
+ * rpc.service.{服务名}@{地址} = 主机信息
+ * 频道：rpc.service.changes，消息为发生变化的服务名
  * </p>
  *
  * @author Jay
@@ -35,8 +46,34 @@ public class RedisRegistry extends Registry {
      * 服务信息 key 前缀
      */
     private final String KEY_SERVICE_PREFIX = "rpc.service.";
+    /**
+     * 服务名集合
+     */
+    private static final String KEY_SERVICES = "rpc.services";
+    /**
+     * 服务变化频道
+     */
+    private static final String CHANNEL_CHANGES = "rpc.service.changes";
+    /**
+     * 超过几个心跳周期没有心跳视为下线
+     */
+    private static final int EXPIRE_HEARTBEATS = 2;
+    /**
+     * 允许的节点间时钟偏差
+     */
+    private static final long MAX_CLOCK_SKEW_MILLIS = 30_000;
+    /**
+     * 订阅断开后重连间隔
+     */
+    private static final long RESUBSCRIBE_INTERVAL_MILLIS = 1000;
     private final Logger LOGGER = LoggerFactory.getLogger(this.getClass());
 
+    /**
+     * 服务名 - 地址变化回调
+     */
+    private final Map<String, List<Runnable>> listeners = new ConcurrentHashMap<>(16);
+    private volatile Thread subscriber;
+
     public RedisRegistry(RedisUtil redisUtil) {
         this.redisUtil = redisUtil;
     }
@@ -44,44 +81,75 @@ public class RedisRegistry extends Registry {
 
     @Override
     public List<InetSocketAddress> getServiceAddress(String serviceName) {
-        Set<String> addresses = redisUtil.keys(KEY_SERVICE_PREFIX + serviceName + ".*");
-        return addresses.stream().map(key -> {
-            String prefix = KEY_SERVICE_PREFIX + serviceName + ".";
-            String address = key.substring(prefix.length());
-            System.out.println(address);
-            String ip = address.substring(0, address.indexOf(":"));
-            int port = Integer.parseInt(address.substring(address.indexOf(":") + 1));
-            return new InetSocketAddress(ip, port);
-        }).collect(Collectors.toList());
+        String indexKey = KEY_SERVICE_PREFIX + serviceName;
+        // 只读，过期地址由服务提供者清理
+        Set<String> addresses = redisUtil.rangeByScore(indexKey, aliveSince(), Double.POSITIVE_INFINITY);
+        List<InetSocketAddress> result = new ArrayList<>(addresses.size());
+        for (String address : addresses) {
+            result.add(parseAddress(address));
+        }
+        return result;
+    }
+
+    @Override
+    public Map<InetSocketAddress, ServerInfo> getServerInfos(String serviceName) {
+        String indexKey = KEY_SERVICE_PREFIX + serviceName;
+        List<String> addresses = new ArrayList<>(redisUtil.rangeByScore(indexKey, aliveSince(), Double.POSITIVE_INFINITY));
+        // pipeline批量读取主机信息
+        List<Object> infos = redisUtil.pipelined(pipeline -> addresses.forEach(address -> pipeline.get(indexKey + "@" + address)));
+        Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension("json");
+        Map<InetSocketAddress, ServerInfo> result = new HashMap<>(addresses.size() * 2);
+        for(int i = 0; i < addresses.size(); i++){
+            String serializedInfo = (String) infos.get(i);
+            if(serializedInfo != null){
+                result.put(parseAddress(addresses.get(i)), serializer.deserialize(serializedInfo.getBytes(), ServerInfo.class));
+            }
+        }
+        return result;
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public List<ServiceInfo> discoverService() {
-        // 获取所有的服务key
-        Set<String> keys = redisUtil.keys(KEY_SERVICE_PREFIX + "*");
-        // 解析keys
-        Map<String, List<ServerInfo>> resultMap = new HashMap<>(16);
-        keys.forEach(key -> {
-            // key is like rpc.service.xxx@192.168.154.128:9000
-            int split = key.lastIndexOf('@');
-            String applicationName = key.substring(KEY_SERVICE_PREFIX.length(), split);
-
-            List<ServerInfo> servers = resultMap.computeIfAbsent(applicationName, k -> new ArrayList<>());
-
-            String serializedInfo = redisUtil.get(key);
-            Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension("json");
-            ServerInfo info = serializer.deserialize(serializedInfo.getBytes(), ServerInfo.class);
-            // 上次心跳时间间隔超过了心跳周期
-            info.setAlive(System.currentTimeMillis() - info.getLastHeartBeatTime() > heartBeatTime);
-            servers.add(info);
+        // 获取所有的服务名
+        List<String> applicationNames = new ArrayList<>(redisUtil.members(KEY_SERVICES));
+        // 一次pipeline读取所有服务的地址索引
+        List<Object> indexes = redisUtil.pipelined(pipeline -> {
+            for (String applicationName : applicationNames) {
+                pipeline.zrangeWithScores(KEY_SERVICE_PREFIX + applicationName, 0, -1);
+            }
         });
+        // 一次pipeline读取所有地址的主机信息
+        List<String> infoKeys = new ArrayList<>();
+        List<Set<Tuple>> members = new ArrayList<>(applicationNames.size());
+        for(int i = 0; i < applicationNames.size(); i++){
+            Set<Tuple> tuples = (Set<Tuple>) indexes.get(i);
+            members.add(tuples);
+            for (Tuple tuple : tuples) {
+                infoKeys.add(KEY_SERVICE_PREFIX + applicationNames.get(i) + "@" + tuple.getElement());
+            }
+        }
+        List<Object> infos = redisUtil.pipelined(pipeline -> infoKeys.forEach(pipeline::get));
 
-        List<ServiceInfo> result = new ArrayList<>(resultMap.keySet().size());
-        for (String applicationName : resultMap.keySet()) {
+        Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension("json");
+        long aliveSince = aliveSince();
+        List<ServiceInfo> result = new ArrayList<>(applicationNames.size());
+        int infoIndex = 0;
+        for(int i = 0; i < applicationNames.size(); i++){
+            List<ServerInfo> servers = new ArrayList<>(members.get(i).size());
+            for (Tuple tuple : members.get(i)) {
+                String serializedInfo = (String) infos.get(infoIndex++);
+                ServerInfo info = serializedInfo == null ? ServerInfo.builder().address(tuple.getElement()).build()
+                        : serializer.deserialize(serializedInfo.getBytes(), ServerInfo.class);
+                // 上次心跳时间在有效期内
+                info.setLastHeartBeatTime((long) tuple.getScore());
+                info.setAlive(tuple.getScore() >= aliveSince);
+                servers.add(info);
+            }
             ServiceInfo serviceInfo = ServiceInfo.builder()
-                    .serviceName(applicationName)
-                    .servers(resultMap.get(applicationName))
-                    .serverCount(resultMap.get(applicationName).size())
+                    .serviceName(applicationNames.get(i))
+                    .servers(servers)
+                    .serverCount(servers.size())
                     .build();
             result.add(serviceInfo);
         }
@@ -90,27 +158,113 @@ public class RedisRegistry extends Registry {
 
     @Override
     public void registerService(String applicationName, String address) {
-        String addressKey = KEY_SERVICE_PREFIX + applicationName + "@" + address;
-        // 生成注册信息
-        ServerInfo serverInfo = getServerInfo(address);
-        Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension("json");
-        // 序列化
-        String serializedInfo = new String(serializer.serialize(serverInfo));
-        // 注册服务，key=地址，value=主机信息
-        redisUtil.setEx(addressKey, serializedInfo, heartBeatTime, TimeUnit.SECONDS);
-
+        // 注册服务，加入服务名集合和地址索引，写入主机信息
+        List<Object> results = writeHeartBeat(applicationName, address);
+        LOGGER.info("Redis注册服务，appName: {}, addr: {}", applicationName, address);
+        // 通知客户端服务上线
+        if(Long.valueOf(1L).equals(results.get(1))){
+            redisUtil.publish(CHANNEL_CHANGES, applicationName);
+        }
     }
 
     @Override
     public void heartBeat(String applicationName, String address){
-        String addressKey = KEY_SERVICE_PREFIX + applicationName + "@" + address;
-        LOGGER.info("Redis心跳续约，appName: {}, addr: {}, 续约时长：{}", applicationName, address, heartBeatTime);
+        LOGGER.info("Redis心跳续约，appName: {}, addr: {}, 续约时长：{}", applicationName, address, heartBeatTime * EXPIRE_HEARTBEATS);
+        List<Object> results = writeHeartBeat(applicationName, address);
+        // 地址已被当作过期清理，重新加入索引，或者清理了其他过期地址，通知客户端
+        boolean changed = Long.valueOf(1L).equals(results.get(1));
+        if(removeExpired(applicationName) > 0 || changed){
+            redisUtil.publish(CHANNEL_CHANGES, applicationName);
+        }
+    }
+
+    /**
+     * 清理服务中已经过期的地址，由服务提供者在心跳时执行
+     * @param applicationName 服务名
+     * @return 清理的地址数量
+     */
+    private long removeExpired(String applicationName){
+        return redisUtil.removeRangeByScore(KEY_SERVICE_PREFIX + applicationName, Double.NEGATIVE_INFINITY, aliveSince() - 1);
+    }
+
+    /**
+     * 通过pipeline更新服务名集合、心跳时间和主机信息
+     * @param applicationName 服务名
+     * @param address 地址
+     * @return pipeline结果，第二条是ZADD新增的成员数
+     */
+    private List<Object> writeHeartBeat(String applicationName, String address){
+        String indexKey = KEY_SERVICE_PREFIX + applicationName;
+        String addressKey = indexKey + "@" + address;
         // 生成注册信息
         ServerInfo serverInfo = getServerInfo(address);
         Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension("json");
         // 序列化
         String serializedInfo = new String(serializer.serialize(serverInfo));
-        // 续约一个心跳周期
-        redisUtil.setEx(addressKey, serializedInfo, heartBeatTime, TimeUnit.SECONDS);
+        // 主机信息保留到客户端不再认为该地址存活
+        int expireSeconds = (int) TimeUnit.MILLISECONDS.toSeconds(expireMillis() + MAX_CLOCK_SKEW_MILLIS);
+        return redisUtil.pipelined(pipeline -> {
+            pipeline.sadd(KEY_SERVICES, applicationName);
+            pipeline.zadd(indexKey, serverInfo.getLastHeartBeatTime(), address);
+            pipeline.setex(addressKey, expireSeconds, serializedInfo);
+        });
+    }
+
+    /**
+     * 订阅服务变化频道，收到消息后回调对应服务的listener
+     * 所有服务共用一个订阅连接
+     * @param serviceName 服务名
+     * @param listener 变化回调
+     * @return boolean
+     */
+    @Override
+    public boolean watch(String serviceName, Runnable listener) {
+        listeners.computeIfAbsent(serviceName, k -> new CopyOnWriteArrayList<>()).add(listener);
+        startSubscriber();
+        return true;
+    }
+
+    private synchronized void startSubscriber(){
+        if(subscriber != null){
+            return;
+        }
+        JedisPubSub pubSub = new JedisPubSub() {
+            @Override
+            public void onMessage(String channel, String message) {
+                List<Runnable> serviceListeners = listeners.get(message);
+                if(serviceListeners != null){
+                    serviceListeners.forEach(Runnable::run);
+                }
+            }
+        };
+        subscriber = new Thread(() -> {
+            while(!Thread.currentThread().isInterrupted()){
+                try{
+                    redisUtil.subscribe(pubSub, CHANNEL_CHANGES);
+                }catch (Exception e){
+                    LOGGER.warn("Redis订阅断开，{}ms后重新订阅", RESUBSCRIBE_INTERVAL_MILLIS, e);
+                }
+                try{
+                    // 订阅断开期间可能错过消息，通知所有服务刷新
+                    Thread.sleep(RESUBSCRIBE_INTERVAL_MILLIS);
+                    listeners.values().forEach(list -> list.forEach(Runnable::run));
+                }catch (InterruptedException e){
+                    return;
+                }
+            }
+        }, "redis-registry-subscriber");
+        subscriber.setDaemon(true);
+        subscriber.start();
+    }
+
+    private long expireMillis(){
+        return TimeUnit.SECONDS.toMillis((long) heartBeatTime * EXPIRE_HEARTBEATS);
+    }
+
+    /**
+     * 心跳时间不早于该时间的地址视为存活，容忍节点间的时钟偏差
+     */
+    private long aliveSince(){
+        return System.currentTimeMillis() - expireMillis() - MAX_CLOCK_SKEW_MILLIS;
     }
 }
@@ -137,6 +137,60 @@ public class ZooKeeperRegistry extends Registry {
         }
     }
 
+    @Override
+    public Map<InetSocketAddress, ServerInfo> getServerInfos(String serviceName) {
+        try{
+            String servicePath = PATH_PREFIX + "/" + serviceName;
+            List<String> children = zookeeperUtil.listChildren(servicePath);
+            if(children == null){
+                return new HashMap<>(0);
+            }
+            Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension("json");
+            Map<InetSocketAddress, ServerInfo> result = new HashMap<>(children.size() * 2);
+            for (String address : children) {
+                String serializedInfo = zookeeperUtil.getData(servicePath + "/" + address);
+                result.put(parseAddress(address), serializer.deserialize(serializedInfo.getBytes(), ServerInfo.class));
+            }
+            return result;
+        }catch (Exception e){
+            logger.error("获取主机信息出现异常", e);
+            return new HashMap<>(0);
+        }
+    }
+
+    /**
+     * 通过子节点watch监听服务地址变化
+     * @param serviceName 服务名
+     * @param listener 变化回调
+     * @return boolean
+     */
+    @Override
+    public boolean watch(String serviceName, Runnable listener) {
+        try{
+            watchChildren(PATH_PREFIX + "/" + serviceName, listener);
+            return true;
+        }catch (Exception e){
+            logger.warn("监听服务地址失败，服务名：{}", serviceName, e);
+            return false;
+        }
+    }
+
+    private void watchChildren(String path, Runnable listener) throws KeeperException, InterruptedException {
+        zookeeperUtil.watchChildren(path, event -> {
+            // 连接状态事件不代表地址变化
+            if(event.getType() == Watcher.Event.EventType.None){
+                return;
+            }
+            listener.run();
+            // watch只触发一次，重新注册
+            try{
+                watchChildren(path, listener);
+            }catch (Exception e){
+                logger.warn("重新注册watch失败，path：{}", path, e);
+            }
+        });
+    }
+
     /**
      * 获取服务地址
      * @param serviceName 服务名
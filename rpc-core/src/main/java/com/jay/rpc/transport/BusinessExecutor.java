@@ -0,0 +1,149 @@
+package com.jay.rpc.transport;
+
+import com.jay.rpc.util.VirtualThreadUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ *  业务线程池
+ *  RpcRequestHandler把解码后的请求交给业务线程池执行，避免慢方法阻塞Netty的worker线程
+ *  线程池有界，队列满时拒绝，由RpcRequestHandler返回拒绝响应
+ *
+ *  也可以每个请求使用一个虚拟线程，适合阻塞的JDBC、下游RPC调用
+ *
+ *  同时统计请求的排队时间和执行时间
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/11/29
+ **/
+@Slf4j
+public class BusinessExecutor {
+    /**
+     * 为null时在IO线程直接执行
+     */
+    private final ExecutorService executor;
+
+    private final LongAdder queueTimeNanos = new LongAdder();
+    private final LongAdder executeTimeNanos = new LongAdder();
+    private final LongAdder executedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    /**
+     * 虚拟线程pinned次数
+     */
+    private final LongAdder pinnedCount = new LongAdder();
+
+    private BusinessExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 在IO线程直接执行
+     * @return BusinessExecutor
+     */
+    public static BusinessExecutor direct(){
+        return new BusinessExecutor(null);
+    }
+
+    /**
+     * 有界线程池
+     * @param threads 线程数
+     * @param queueSize 等待队列长度
+     * @return BusinessExecutor
+     */
+    public static BusinessExecutor threadPool(int threads, int queueSize){
+        if(threads <= 0 || queueSize <= 0){
+            throw new IllegalArgumentException("threads and queueSize must be positive");
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), new DefaultThreadFactory("rpc-business"), new ThreadPoolExecutor.AbortPolicy());
+        log.info("业务线程池：线程数：{}，队列长度：{}", threads, queueSize);
+        return new BusinessExecutor(executor);
+    }
+
+    /**
+     * 每个请求一个虚拟线程，需要JDK21+，不支持时退回有界线程池
+     * 同时开启pinned监控
+     * @param fallbackThreads 退回线程池时的线程数
+     * @param fallbackQueueSize 退回线程池时的队列长度
+     * @return BusinessExecutor
+     */
+    public static BusinessExecutor virtualThreads(int fallbackThreads, int fallbackQueueSize){
+        if(!VirtualThreadUtil.isAvailable()){
+            log.warn("当前JDK不支持虚拟线程，使用业务线程池");
+            return threadPool(fallbackThreads, fallbackQueueSize);
+        }
+        BusinessExecutor businessExecutor = new BusinessExecutor(VirtualThreadUtil.newVirtualThreadPerTaskExecutor("rpc-virtual-"));
+        VirtualThreadUtil.startPinnedMonitor(businessExecutor.pinnedCount);
+        log.info("业务请求使用虚拟线程执行");
+        return businessExecutor;
+    }
+
+    /**
+     * 提交请求
+     * @param task 请求处理任务
+     * @throws RejectedExecutionException 线程池已满
+     */
+    public void execute(Runnable task) throws RejectedExecutionException {
+        if(executor == null){
+            run(task, System.nanoTime());
+            return;
+        }
+        long submitTime = System.nanoTime();
+        try{
+            executor.execute(() -> run(task, submitTime));
+        }catch (RejectedExecutionException e){
+            rejectedCount.increment();
+            throw e;
+        }
+    }
+
+    private void run(Runnable task, long submitTime){
+        long startTime = System.nanoTime();
+        queueTimeNanos.add(startTime - submitTime);
+        try{
+            task.run();
+        }finally {
+            executeTimeNanos.add(System.nanoTime() - startTime);
+            executedCount.increment();
+        }
+    }
+
+    /**
+     * 平均排队时间，微秒
+     * @return double
+     */
+    public double getAverageQueueTimeMicros(){
+        long count = executedCount.sum();
+        return count == 0 ? 0 : queueTimeNanos.sum() / 1e3 / count;
+    }
+
+    /**
+     * 平均执行时间，微秒
+     * @return double
+     */
+    public double getAverageExecuteTimeMicros(){
+        long count = executedCount.sum();
+        return count == 0 ? 0 : executeTimeNanos.sum() / 1e3 / count;
+    }
+
+    public long getExecutedCount(){
+        return executedCount.sum();
+    }
+
+    public long getRejectedCount(){
+        return rejectedCount.sum();
+    }
+
+    public long getPinnedCount(){
+        return pinnedCount.sum();
+    }
+}
@@ -10,9 +10,8 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.annotation.Value;
@@ -26,6 +25,7 @@ import java.net.InetAddress;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -38,8 +38,47 @@ import java.util.Set;
 @Component
 @Slf4j
 public class RpcServer implements ApplicationContextAware {
-    private final NioEventLoopGroup bossGroup = new NioEventLoopGroup();
-    private final NioEventLoopGroup workerGroup = new NioEventLoopGroup(4);
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    /**
+     * 传输层类型，auto/epoll/nio
+     */
+    @Value("${rpc.transport.type:auto}")
+    private String transportType;
+    /**
+     * worker线程数
+     */
+    @Value("${rpc.server.io-threads:4}")
+    private int ioThreads;
+    /**
+     * acceptor数量，epoll下通过SO_REUSEPORT多次绑定同一端口
+     */
+    @Value("${rpc.server.acceptors:1}")
+    private int acceptors;
+    /**
+     * 实际使用的传输层
+     */
+    private TransportType transport;
+
+    /**
+     * 请求分发方式，pool：交给业务线程池；virtual：每个请求一个虚拟线程；direct：在IO线程直接执行
+     */
+    @Value("${rpc.server.dispatch:pool}")
+    private String dispatch;
+    /**
+     * 业务线程数
+     */
+    @Value("${rpc.server.business.threads:200}")
+    private int businessThreads;
+    /**
+     * 业务线程池等待队列长度
+     */
+    @Value("${rpc.server.business.queue-size:1024}")
+    private int businessQueueSize;
+    /**
+     * 业务线程池
+     */
+    private BusinessExecutor businessExecutor;
     /**
      * RPC服务器端口
      */
@@ -63,6 +102,34 @@ public class RpcServer implements ApplicationContextAware {
     @Value("${rpc.traffic.permits-per-second:1000}")
     private int permitsPerSecond;
 
+    /**
+     * 是否开启flush合并
+     */
+    @Value("${rpc.transport.flush-batch.enable:false}")
+    private boolean enableFlushBatch;
+    /**
+     * 单次flush最多消息数
+     */
+    @Value("${rpc.transport.flush-batch.max-batch:64}")
+    private int flushMaxBatch;
+    /**
+     * flush最长延迟，微秒
+     */
+    @Value("${rpc.transport.flush-batch.max-delay-micros:50}")
+    private long flushMaxDelayMicros;
+
+    /**
+     * 压缩阈值，数据部分小于该字节数时不压缩
+     */
+    @Value("${rpc.compress.threshold:1024}")
+    private int compressThreshold;
+
+    /**
+     * 服务权重，0表示由客户端根据CPU数量计算
+     */
+    @Value("${rpc.server.weight:0}")
+    private int weight;
+
     private ApplicationContext context;
 
     /**
@@ -80,11 +147,32 @@ public class RpcServer implements ApplicationContextAware {
      * @return ServerBootstrap
      */
     private ServerBootstrap init(){
+        transport = TransportType.select(transportType);
+        // 只有支持SO_REUSEPORT时才使用多个acceptor
+        if(!transport.supportsReusePort()){
+            acceptors = 1;
+        }
+        bossGroup = transport.newEventLoopGroup(Math.max(1, acceptors), "rpc-boss");
+        workerGroup = transport.newEventLoopGroup(ioThreads, "rpc-worker");
+        log.info("RPC服务传输层：{}，acceptor数量：{}", transport, acceptors);
+
+        if("direct".equalsIgnoreCase(dispatch)){
+            businessExecutor = BusinessExecutor.direct();
+        }
+        else if("virtual".equalsIgnoreCase(dispatch)){
+            businessExecutor = BusinessExecutor.virtualThreads(businessThreads, businessQueueSize);
+        }
+        else{
+            businessExecutor = BusinessExecutor.threadPool(businessThreads, businessQueueSize);
+        }
+
         ServerBootstrap serverBootstrap = new ServerBootstrap();
         serverBootstrap.group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class)
+                .channel(transport.serverChannelClass())
                 .option(ChannelOption.SO_BACKLOG, 128)
-                .childOption(ChannelOption.SO_KEEPALIVE, false)
+                .childOption(ChannelOption.SO_KEEPALIVE, false);
+        transport.configureServer(serverBootstrap, acceptors > 1);
+        serverBootstrap
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override
                     protected void initChannel(SocketChannel channel){
@@ -92,6 +180,10 @@ public class RpcServer implements ApplicationContextAware {
                             处理器管线
                          */
                         ChannelPipeline pipeline = channel.pipeline();
+                        // flush合并，放在最前面，合并编码后的报文
+                        if(enableFlushBatch){
+                            pipeline.addLast(new FlushBatchHandler(flushMaxBatch, flushMaxDelayMicros, TimeUnit.MICROSECONDS));
+                        }
                         // Rpc解码器
                         pipeline.addLast(new RpcDecoder());
                         // 限流器
@@ -103,10 +195,10 @@ public class RpcServer implements ApplicationContextAware {
                             pipeline.addLast(filter);
                         }
                         // Rpc请求处理器
-                        pipeline.addLast(new RpcRequestHandler());
+                        pipeline.addLast(new RpcRequestHandler(businessExecutor));
 
                         // Rpc编码器
-                        pipeline.addLast(new RpcEncoder());
+                        pipeline.addLast(new RpcEncoder(compressThreshold));
                     }
                 });
         return serverBootstrap;
@@ -126,6 +218,7 @@ public class RpcServer implements ApplicationContextAware {
             InetAddress localHost = InetAddress.getLocalHost();
             String host = localHost.getHostAddress() + ":" + port;
             // 注册到服务注册中心
+            serviceRegistry.setWeight(weight);
             serviceRegistry.registerService(applicationName, host);
             // 开启心跳
             serviceRegistry.startHearBeat(applicationName, host);
@@ -140,6 +233,10 @@ public class RpcServer implements ApplicationContextAware {
             if(serviceCount != 0){
                 // 启动服务器
                 ChannelFuture channelFuture = serverBootstrap.bind(Integer.parseInt(port)).sync();
+                // SO_REUSEPORT，其余acceptor绑定同一端口
+                for(int i = 1; i < acceptors && channelFuture.isSuccess(); i++){
+                    channelFuture = serverBootstrap.bind(Integer.parseInt(port)).sync();
+                }
                 if(channelFuture.isSuccess()){
                     log.info("RPC服务启动成功，服务地址:{}", host);
                 }
@@ -152,6 +249,10 @@ public class RpcServer implements ApplicationContextAware {
         }
     }
 
+    public BusinessExecutor getBusinessExecutor() {
+        return businessExecutor;
+    }
+
     /**
      * 提供Spring Bean容器
      * @param applicationContext appContext
@@ -181,6 +282,9 @@ public class RpcServer implements ApplicationContextAware {
                 Class<?>[] interfaces = bean.getClass().getInterfaces();
                 ServiceMapper.put(interfaces[0], bean);
             }
+            // 生成服务方法调用表
+            int methodCount = ServiceMapper.buildInvokers();
+            log.info("服务方法调用表生成完成，一共：{} 个方法", methodCount);
             return entries.size();
         }
         return 0;
@@ -0,0 +1,159 @@
+package com.jay.rpc.transport;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollMode;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ *  Netty传输层类型
+ *  Linux下优先使用native epoll（边缘触发、SO_REUSEPORT），不可用时退回JDK NIO
+ *
+ *  配置：rpc.transport.type = auto / epoll / nio
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/11/27
+ **/
+@Slf4j
+public enum TransportType {
+    /**
+     * JDK NIO Selector
+     */
+    NIO{
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads, String name) {
+            return new NioEventLoopGroup(threads, new DefaultThreadFactory(name));
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return NioServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends Channel> channelClass() {
+            return NioSocketChannel.class;
+        }
+    },
+    /**
+     * native epoll，仅Linux可用
+     */
+    EPOLL{
+        @Override
+        public EventLoopGroup newEventLoopGroup(int threads, String name) {
+            return new EpollEventLoopGroup(threads, new DefaultThreadFactory(name));
+        }
+
+        @Override
+        public Class<? extends ServerChannel> serverChannelClass() {
+            return EpollServerSocketChannel.class;
+        }
+
+        @Override
+        public Class<? extends Channel> channelClass() {
+            return EpollSocketChannel.class;
+        }
+
+        @Override
+        public boolean supportsReusePort() {
+            return true;
+        }
+
+        @Override
+        public void configureClient(Bootstrap bootstrap) {
+            super.configureClient(bootstrap);
+            // 边缘触发
+            bootstrap.option(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED);
+        }
+
+        @Override
+        public void configureServer(ServerBootstrap bootstrap, boolean reusePort) {
+            super.configureServer(bootstrap, reusePort);
+            bootstrap.childOption(EpollChannelOption.EPOLL_MODE, EpollMode.EDGE_TRIGGERED);
+            // 多个acceptor绑定同一个端口，由内核分发连接
+            if(reusePort){
+                bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            }
+        }
+    };
+
+    /**
+     * 创建事件循环组
+     * @param threads 线程数，0表示使用Netty默认值
+     * @param name 线程名前缀
+     * @return EventLoopGroup
+     */
+    public abstract EventLoopGroup newEventLoopGroup(int threads, String name);
+
+    /**
+     * 服务端Channel类型
+     * @return Class
+     */
+    public abstract Class<? extends ServerChannel> serverChannelClass();
+
+    /**
+     * 客户端Channel类型
+     * @return Class
+     */
+    public abstract Class<? extends Channel> channelClass();
+
+    /**
+     * 是否支持SO_REUSEPORT多acceptor
+     * @return boolean
+     */
+    public boolean supportsReusePort(){
+        return false;
+    }
+
+    /**
+     * 设置客户端连接参数
+     * @param bootstrap bootstrap
+     */
+    public void configureClient(Bootstrap bootstrap){
+        bootstrap.option(ChannelOption.TCP_NODELAY, true);
+    }
+
+    /**
+     * 设置服务端参数
+     * @param bootstrap serverBootstrap
+     * @param reusePort 是否开启SO_REUSEPORT
+     */
+    public void configureServer(ServerBootstrap bootstrap, boolean reusePort){
+        bootstrap.childOption(ChannelOption.TCP_NODELAY, true);
+    }
+
+    /**
+     * 根据配置选择传输层
+     * @param type 配置值，auto/epoll/nio
+     * @return TransportType
+     */
+    public static TransportType select(String type){
+        if("nio".equalsIgnoreCase(type)){
+            return NIO;
+        }
+        boolean epollAvailable = Epoll.isAvailable();
+        if("epoll".equalsIgnoreCase(type) && !epollAvailable){
+            log.warn("native epoll不可用，使用NIO，原因：{}", String.valueOf(Epoll.unavailabilityCause()));
+            return NIO;
+        }
+        if(!"epoll".equalsIgnoreCase(type) && !"auto".equalsIgnoreCase(type)){
+            log.warn("未知的传输层类型：{}，自动选择", type);
+        }
+        return epollAvailable ? EPOLL : NIO;
+    }
+}
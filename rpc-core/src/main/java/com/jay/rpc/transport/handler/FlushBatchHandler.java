@@ -0,0 +1,190 @@
+package com.jay.rpc.transport.handler;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ *  flush合并处理器
+ *  把同一个事件循环内的多次flush合并成一次，减少write系统调用
+ *
+ *  1. 读事件进行中的flush，推迟到channelReadComplete时统一flush
+ *  2. 其他flush最多等待maxDelay，期间累计的消息一起flush
+ *  3. 待flush的消息达到maxBatch时立即flush
+ *
+ *  该处理器需要放在编码器和socket之间，即pipeline的最前面
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/11/26
+ **/
+public class FlushBatchHandler extends ChannelDuplexHandler {
+    /**
+     * 实际flush次数
+     */
+    private static final LongAdder FLUSH_COUNT = new LongAdder();
+    /**
+     * flush的消息总数
+     */
+    private static final LongAdder MESSAGE_COUNT = new LongAdder();
+
+    /**
+     * 单次flush最多消息数
+     */
+    private final int maxBatch;
+    /**
+     * flush最长延迟，纳秒
+     */
+    private final long maxDelayNanos;
+
+    private ChannelHandlerContext ctx;
+    /**
+     * 尚未flush的消息数量
+     */
+    private int pendingWrites;
+    private boolean readInProgress;
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean flushTaskSubmitted;
+
+    private final Runnable flushTask = () -> {
+        flushTaskSubmitted = false;
+        scheduledFlush = null;
+        doFlush();
+    };
+
+    public FlushBatchHandler(int maxBatch, long maxDelay, TimeUnit timeUnit) {
+        if(maxBatch <= 0){
+            throw new IllegalArgumentException("maxBatch must be positive");
+        }
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = Math.max(0, timeUnit.toNanos(maxDelay));
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        pendingWrites++;
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        if(pendingWrites == 0){
+            return;
+        }
+        // 达到批量上限，立即flush
+        if(pendingWrites >= maxBatch){
+            doFlush();
+            return;
+        }
+        // 读事件进行中，等待channelReadComplete
+        if(readInProgress){
+            return;
+        }
+        scheduleFlush();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        readInProgress = false;
+        doFlush();
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        if(!ctx.channel().isWritable()){
+            doFlush();
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        doFlush();
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise) {
+        doFlush();
+        ctx.disconnect(promise);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) {
+        doFlush();
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        doFlush();
+    }
+
+    private void scheduleFlush(){
+        if(maxDelayNanos == 0){
+            // 下一次事件循环时flush
+            if(!flushTaskSubmitted){
+                flushTaskSubmitted = true;
+                ctx.executor().execute(flushTask);
+            }
+        }
+        else if(scheduledFlush == null){
+            scheduledFlush = ctx.executor().schedule(flushTask, maxDelayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void doFlush(){
+        if(scheduledFlush != null){
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if(pendingWrites > 0){
+            FLUSH_COUNT.increment();
+            MESSAGE_COUNT.add(pendingWrites);
+            pendingWrites = 0;
+            ctx.flush();
+        }
+    }
+
+    /**
+     * 实际flush次数
+     * @return long
+     */
+    public static long getFlushCount(){
+        return FLUSH_COUNT.sum();
+    }
+
+    /**
+     * 经过合并flush的消息数量
+     * @return long
+     */
+    public static long getMessageCount(){
+        return MESSAGE_COUNT.sum();
+    }
+
+    /**
+     * 平均每次flush的消息数量
+     * @return double
+     */
+    public static double getAverageBatchSize(){
+        long flushes = FLUSH_COUNT.sum();
+        return flushes == 0 ? 0 : (double) MESSAGE_COUNT.sum() / flushes;
+    }
+}
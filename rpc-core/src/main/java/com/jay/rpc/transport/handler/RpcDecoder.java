@@ -4,16 +4,22 @@ import com.jay.common.enums.CompressorTypeEnum;
 import com.jay.common.enums.SerializerTypeEnum;
 import com.jay.common.extention.ExtensionLoader;
 import com.jay.rpc.compress.Compressor;
+import com.jay.rpc.compress.stream.StreamInflater;
 import com.jay.rpc.constants.RpcConstants;
+import com.jay.rpc.entity.MethodTable;
 import com.jay.rpc.entity.RpcMessage;
 import com.jay.rpc.entity.RpcRequest;
 import com.jay.rpc.entity.RpcResponse;
 import com.jay.rpc.transport.serialize.Serializer;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 
 /**
  * <p>
@@ -31,11 +37,14 @@ import lombok.extern.slf4j.Slf4j;
  *   magicNumber：魔数, "srpc"
  *   version：版本
  *   fullLength：报文总长度 = 头部16字节 + body，最大Integer.MAX_VALUE
- *   messageType：消息类型，request/response/心跳
- *   serializer：序列化类型，protostuff/kyro
- *   compress：body是否压缩
+ *   messageType：消息类型，request/response/心跳/方法表协商
+ *   serializer：序列化类型，protostuff/kryo/hessian2
+ *   compress：body压缩方式，最高位为1表示未压缩，低7位为期望的压缩方式
  *   requestId：消息ID，自增int
  *   data：消息体
+ *
+ *   数据部分通过ByteBufInputStream直接从frame反序列化，压缩数据解压到池化buffer，frame在解码完成后释放
+ *   deflate-stream消息按接收顺序由该连接的解压流解压，解压失败时关闭连接
  * @see io.netty.handler.codec.LengthFieldBasedFrameDecoder 解决粘包拆包
  * </p>
  *
@@ -44,6 +53,10 @@ import lombok.extern.slf4j.Slf4j;
  **/
 @Slf4j
 public class RpcDecoder extends LengthFieldBasedFrameDecoder {
+    /**
+     * 连接级解压流，收到第一条deflate-stream消息时创建
+     */
+    private StreamInflater streamInflater;
 
     public RpcDecoder() {
         /*
@@ -70,7 +83,7 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
             if(frame.readableBytes() >= RpcConstants.MIN_TOTAL_LENGTH){
                 try{
                     // 解析
-                    return decode(frame);
+                    return decodeFrame(ctx, frame);
                 }catch (Exception e){
                     log.error(e.getMessage(), e);
                     throw e;
@@ -83,7 +96,7 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
         return temp;
     }
 
-    private RpcMessage decode(ByteBuf frame){
+    private RpcMessage decodeFrame(ChannelHandlerContext ctx, ByteBuf frame) throws IOException {
         // 检查魔数和版本
         checkMagicNumber(frame);
         checkVersion(frame);
@@ -94,6 +107,9 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
         byte serializerCode = frame.readByte();
         byte compress = frame.readByte();
         int requestId = frame.readInt();
+        // 发送方因为阈值跳过了压缩，数据部分未压缩，保留期望的压缩方式
+        boolean compressed = compress != RpcConstants.COMPRESS_OFF && (compress & RpcConstants.COMPRESS_SKIPPED) == 0;
+        compress = (byte) (compress & ~RpcConstants.COMPRESS_SKIPPED);
 
         // 封装头部信息
         RpcMessage rpcMessage = RpcMessage.builder().messageType(messageType)
@@ -104,34 +120,77 @@ public class RpcDecoder extends LengthFieldBasedFrameDecoder {
         // 数据部分长度
         int dataLength = fullLength - RpcConstants.HEAD_LENGTH;
         if(dataLength > 0){
-            // 读取数据部分
-            byte[] bytes = new byte[dataLength];
-            frame.readBytes(bytes);
-            // 解压数据部分
-            if(compress != RpcConstants.COMPRESS_OFF){
-                // 找到压缩器类型
-                String compressorType = CompressorTypeEnum.getType(compress);
-                // SPI获取压缩器实例
-                Compressor compressor = ExtensionLoader.getExtensionLoader(Compressor.class).getExtension(compressorType);
-                // 解压
-                bytes = compressor.decompress(bytes);
+            InputStream in;
+            if(compressed){
+                // 解压到池化buffer，流关闭时释放；初始容量不超过解压后的长度上限，按需扩容
+                int initialCapacity = (int) Math.min(dataLength * 2L, RpcConstants.MAX_DECOMPRESSED_LENGTH);
+                ByteBuf decompressed = ctx.alloc().buffer(initialCapacity);
+                try{
+                    if(compress == CompressorTypeEnum.DEFLATE_STREAM.code){
+                        streamDecompress(ctx, frame.readSlice(dataLength), decompressed);
+                    }
+                    else{
+                        compressor(compress).decompress(frame.readSlice(dataLength), decompressed);
+                    }
+                }catch (IOException | RuntimeException e){
+                    decompressed.release();
+                    throw e;
+                }
+                in = new ByteBufInputStream(decompressed, true);
+            }
+            else{
+                // 数据部分直接从frame读取，不拷贝到byte数组
+                in = new ByteBufInputStream(frame, dataLength);
             }
             // 获取序列化工具名称
             String serializerType = SerializerTypeEnum.getType(rpcMessage.getSerializer());
             // SPI 工具加载序列化类
             Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension(serializerType);
             Object data = null;
-            // 根据message类型，反序列化
-            switch(rpcMessage.getMessageType()){
-                case RpcConstants.TYPE_REQUEST : data = serializer.deserialize(bytes, RpcRequest.class);break;
-                case RpcConstants.TYPE_RESPONSE : data = serializer.deserialize(bytes, RpcResponse.class);break;
-                default:
+            try(InputStream dataStream = in){
+                // 根据message类型，反序列化
+                switch(rpcMessage.getMessageType()){
+                    case RpcConstants.TYPE_REQUEST : data = serializer.deserialize(dataStream, RpcRequest.class);break;
+                    case RpcConstants.TYPE_RESPONSE : data = serializer.deserialize(dataStream, RpcResponse.class);break;
+                    case RpcConstants.TYPE_METHOD_TABLE_RESPONSE : data = serializer.deserialize(dataStream, MethodTable.class);break;
+                    default:
+                }
             }
             rpcMessage.setData(data);
         }
         return rpcMessage;
     }
 
+    private void streamDecompress(ChannelHandlerContext ctx, ByteBuf src, ByteBuf dest) throws IOException {
+        if(streamInflater == null){
+            streamInflater = new StreamInflater();
+        }
+        try{
+            streamInflater.decompress(src, dest);
+        }catch (IOException | RuntimeException e){
+            // 解压流已损坏，后续消息无法解压
+            ctx.close();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void handlerRemoved0(ChannelHandlerContext ctx) throws Exception {
+        // 连接关闭，释放解压流
+        if(streamInflater != null){
+            streamInflater.close();
+            streamInflater = null;
+        }
+        super.handlerRemoved0(ctx);
+    }
+
+    private Compressor compressor(byte compress){
+        // 找到压缩器类型
+        String compressorType = CompressorTypeEnum.getType(compress);
+        // SPI获取压缩器实例
+        return ExtensionLoader.getExtensionLoader(Compressor.class).getExtension(compressorType);
+    }
+
     private void checkMagicNumber(ByteBuf frame){
         byte[] buffer = new byte[RpcConstants.MAGIC_NUMBER.length];
         frame.readBytes(buffer);
@@ -4,14 +4,19 @@ import com.jay.common.enums.CompressorTypeEnum;
 import com.jay.common.enums.SerializerTypeEnum;
 import com.jay.common.extention.ExtensionLoader;
 import com.jay.rpc.compress.Compressor;
+import com.jay.rpc.compress.stream.StreamDeflater;
+import com.jay.rpc.compress.zstd.DictionarySampler;
 import com.jay.rpc.constants.RpcConstants;
 import com.jay.rpc.entity.RpcMessage;
 import com.jay.rpc.transport.serialize.Serializer;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufOutputStream;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToByteEncoder;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+
 /**
  * <p>
  *   Rpc消息编码器
@@ -28,11 +33,16 @@ import lombok.extern.slf4j.Slf4j;
  *   magicNumber：魔数, "srpc"
  *   version：版本
  *   fullLength：报文总长度 = 头部16字节 + body，最大Integer.MAX_VALUE
- *   messageType：消息类型，request/response/心跳
- *   serializer：序列化类型，protostuff/kyro
- *   compress：body是否压缩
+ *   messageType：消息类型，request/response/心跳/方法表协商
+ *   serializer：序列化类型，protostuff/kryo/hessian2
+ *   compress：body压缩方式，最高位为1表示未压缩，低7位为期望的压缩方式
  *   requestId：消息ID，自增int
  *   data：消息体
+ *
+ *   数据部分通过序列化输出流直接写入池化的ByteBuf，长度字段在写完后回填
+ *   数据部分不小于压缩阈值时再压缩，压缩后没有变小则保留原数据
+ *   连接级压缩流（deflate-stream）不受阈值影响，每条消息都写入该连接的压缩流
+ *   zstd-dict面向小消息，也不受阈值影响，压缩后没有变小时同样保留原数据
  * </p>
  * @see io.netty.handler.codec.MessageToByteEncoder 输入ByteBuf，输出RpcMessage
  * @author Jay
@@ -40,57 +50,149 @@ import lombok.extern.slf4j.Slf4j;
  **/
 @Slf4j
 public class RpcEncoder extends MessageToByteEncoder<RpcMessage> {
+    /**
+     * 压缩阈值，数据部分小于该长度时不压缩
+     */
+    private final int compressThreshold;
+    /**
+     * 连接级压缩流，第一次发送deflate-stream消息时创建
+     */
+    private StreamDeflater streamDeflater;
+
+    public RpcEncoder() {
+        this(0);
+    }
+
+    public RpcEncoder(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
     @Override
-    protected void encode(ChannelHandlerContext channelHandlerContext, RpcMessage rpcMessage, ByteBuf out){
+    protected void encode(ChannelHandlerContext channelHandlerContext, RpcMessage rpcMessage, ByteBuf out) throws IOException {
         try{
+            int startIndex = out.writerIndex();
             // 写入魔数和版本
             out.writeBytes(RpcConstants.MAGIC_NUMBER);
             out.writeByte(RpcConstants.VERSION);
-            // 暂时跳过长度字段
-            out.writerIndex(out.writerIndex() + 4);
+            // 暂时跳过长度字段，写完数据部分后回填
+            int lengthIndex = out.writerIndex();
+            out.writerIndex(lengthIndex + 4);
             // 写入其他头部信息
             out.writeByte(rpcMessage.getMessageType());
             out.writeByte(rpcMessage.getSerializer());
+            int compressIndex = out.writerIndex();
             out.writeByte(rpcMessage.getCompress());
             out.writeInt(rpcMessage.getRequestId());
 
-            // 总长度，默认为首部长度
-            int fullLength = RpcConstants.HEAD_LENGTH;
-            byte[] bytes = null;
-            // 消息类型是请求或返回
-            if(rpcMessage.getMessageType() == RpcConstants.TYPE_RESPONSE || rpcMessage.getMessageType() == RpcConstants.TYPE_REQUEST){
+            // 消息类型是请求或返回，数据部分直接序列化到out，不经过中间byte数组
+            if(rpcMessage.getData() != null && hasBody(rpcMessage.getMessageType())){
                 // 获取序列化工具
                 String serializerType = SerializerTypeEnum.getType(rpcMessage.getSerializer());
                 Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension(serializerType);
-                // 序列化
-                bytes = serializer.serialize(rpcMessage.getData());
-            }
-
-            // 是否需要压缩数据部分
-            if(rpcMessage.getCompress() != RpcConstants.COMPRESS_OFF){
-                int originalLen = bytes == null ? 0 : bytes.length;
-                // 获取压缩类型
-                String compressorType = CompressorTypeEnum.getType(rpcMessage.getCompress());
-                // SPI获取压缩工具实例
-                Compressor compressor = ExtensionLoader.getExtensionLoader(Compressor.class).getExtension(compressorType);
-                // 压缩数据部分
-                bytes = compressor.compress(bytes);
-                log.info("压缩类型：{}，压缩前大小：{}，压缩后大小：{}", compressorType, originalLen, bytes.length);
+                int bodyIndex = out.writerIndex();
+                serializer.serialize(rpcMessage.getData(), new ByteBufOutputStream(out));
+                int bodyLength = out.writerIndex() - bodyIndex;
+                // 采集字典训练样本
+                DictionarySampler.sample(out, bodyIndex, bodyLength);
+                // 是否需要压缩数据部分
+                byte compress = rpcMessage.getCompress();
+                if(compress == CompressorTypeEnum.DEFLATE_STREAM.code){
+                    // 两端的压缩流必须处理同样的数据，不能跳过压缩
+                    streamCompressBody(channelHandlerContext, out, bodyIndex, bodyLength);
+                }
+                else if(compress != RpcConstants.COMPRESS_OFF){
+                    // 小于阈值或压缩后变大时不压缩，头部标记未压缩
+                    if(belowThreshold(compress, bodyLength) || !compressBody(channelHandlerContext, out, bodyIndex, bodyLength, compress)){
+                        out.setByte(compressIndex, compress | RpcConstants.COMPRESS_SKIPPED);
+                    }
+                }
             }
 
-            // 计算总长度
-            fullLength += (bytes == null ? 0 : bytes.length);
-            // 写入数据部分
-            out.writeBytes(bytes);
-            int endIndex = out.writerIndex();
-            // writerIndex移动到length字段位置
-            out.writerIndex(endIndex - fullLength + RpcConstants.MAGIC_NUMBER.length + 1);
-            // 写入fullLength
-            out.writeInt(fullLength);
-            out.writerIndex(endIndex);
+            // 回填总长度
+            int fullLength = out.writerIndex() - startIndex;
+            out.setInt(lengthIndex, fullLength);
         }catch (Exception e){
             log.error(e.getMessage(), e);
             throw e;
         }
     }
+
+    /**
+     * 压缩已经序列化到out中的数据部分
+     * @param context context
+     * @param out 输出
+     * @param bodyIndex 数据部分起始位置
+     * @param bodyLength 数据部分长度
+     * @param compress 压缩方式
+     * @return 是否已压缩，压缩后没有变小时返回false，out保持不变
+     * @throws IOException IOException
+     */
+    private boolean compressBody(ChannelHandlerContext context, ByteBuf out, int bodyIndex, int bodyLength, byte compress) throws IOException {
+        // 获取压缩类型
+        String compressorType = CompressorTypeEnum.getType(compress);
+        // SPI获取压缩工具实例
+        Compressor compressor = ExtensionLoader.getExtensionLoader(Compressor.class).getExtension(compressorType);
+        ByteBuf compressed = context.alloc().buffer(bodyLength);
+        try{
+            // 压缩结果写入池化的临时buffer
+            compressor.compress(out.slice(bodyIndex, bodyLength), compressed);
+            if(compressed.readableBytes() >= bodyLength){
+                return false;
+            }
+            // 用压缩结果替换原数据
+            out.writerIndex(bodyIndex);
+            out.writeBytes(compressed);
+            return true;
+        }finally {
+            compressed.release();
+        }
+    }
+
+    /**
+     * 使用连接级压缩流压缩数据部分
+     * 压缩流出错后两端状态不再一致，关闭连接
+     * @param context context
+     * @param out 输出
+     * @param bodyIndex 数据部分起始位置
+     * @param bodyLength 数据部分长度
+     */
+    private void streamCompressBody(ChannelHandlerContext context, ByteBuf out, int bodyIndex, int bodyLength){
+        if(streamDeflater == null){
+            streamDeflater = new StreamDeflater();
+        }
+        ByteBuf compressed = context.alloc().buffer(bodyLength);
+        try{
+            streamDeflater.compress(out.slice(bodyIndex, bodyLength), compressed);
+            out.writerIndex(bodyIndex);
+            out.writeBytes(compressed);
+        }catch (RuntimeException e){
+            context.close();
+            throw e;
+        }finally {
+            compressed.release();
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        // 连接关闭，释放压缩流
+        if(streamDeflater != null){
+            streamDeflater.close();
+            streamDeflater = null;
+        }
+        super.handlerRemoved(ctx);
+    }
+
+    /**
+     * 数据部分是否小于压缩阈值
+     * zstd-dict的字典就是为小消息训练的，不使用阈值
+     */
+    private boolean belowThreshold(byte compress, int bodyLength){
+        return compress != CompressorTypeEnum.ZSTD_DICT.code && bodyLength < compressThreshold;
+    }
+
+    private static boolean hasBody(byte messageType){
+        return messageType == RpcConstants.TYPE_RESPONSE || messageType == RpcConstants.TYPE_REQUEST
+                || messageType == RpcConstants.TYPE_METHOD_TABLE_RESPONSE;
+    }
 }
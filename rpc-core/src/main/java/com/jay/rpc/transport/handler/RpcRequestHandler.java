@@ -1,20 +1,27 @@
 package com.jay.rpc.transport.handler;
 
 import com.jay.rpc.constants.RpcConstants;
+import com.jay.rpc.discovery.ServiceInvoker;
 import com.jay.rpc.discovery.ServiceMapper;
 import com.jay.rpc.entity.RpcMessage;
 import com.jay.rpc.entity.RpcRequest;
 import com.jay.rpc.entity.RpcResponse;
+import com.jay.rpc.transport.BusinessExecutor;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.Method;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 
 
 /**
  * <p>
- *
+ *  RPC请求处理器
+ *  请求交给业务线程池执行，响应由Netty切换回IO线程写出
+ *  服务方法返回CompletionStage时，在future完成后再异步写回响应，不阻塞业务线程
+ *  客户端请求方法表时返回ServiceMapper生成的方法表，之后的请求通过方法ID直接查表
  * </p>
  *
  * @author Jay
@@ -22,6 +29,14 @@ import java.lang.reflect.Method;
  **/
 @Slf4j
 public class RpcRequestHandler extends SimpleChannelInboundHandler<RpcMessage> {
+    /**
+     * 业务线程池
+     */
+    private final BusinessExecutor businessExecutor;
+
+    public RpcRequestHandler(BusinessExecutor businessExecutor) {
+        this.businessExecutor = businessExecutor;
+    }
 
     @Override
     protected void channelRead0(ChannelHandlerContext context, RpcMessage message) {
@@ -32,45 +47,77 @@ public class RpcRequestHandler extends SimpleChannelInboundHandler<RpcMessage> {
         byte messageType = message.getMessageType();
         // 接收到请求
         if(RpcConstants.TYPE_REQUEST == messageType){
-            // 处理请求
-            RpcResponse response = handleRequest(context, (RpcRequest) message.getData());
-            respondMessageBuilder.messageType(RpcConstants.TYPE_RESPONSE)
-                    .data(response);
+            respondMessageBuilder.messageType(RpcConstants.TYPE_RESPONSE);
+            try{
+                // 交给业务线程池处理请求，由handleRequest写回响应
+                businessExecutor.execute(() -> handleRequest(context, (RpcRequest) message.getData(), respondMessageBuilder));
+            }catch (RejectedExecutionException e){
+                log.warn("业务线程池已满，拒绝请求：id={}", message.getRequestId());
+                RpcResponse response = RpcResponse.builder().error(new RejectedExecutionException("server busy")).build();
+                writeResponse(context, respondMessageBuilder, response);
+            }
+            return;
         }
         // 收到心跳请求
-        else if(RpcConstants.TYPE_HEARTBEAT_REQUEST == messageType){
+        if(RpcConstants.TYPE_HEARTBEAT_REQUEST == messageType){
             respondMessageBuilder.messageType(RpcConstants.TYPE_HEARTBEAT_RESPONSE)
                     .data(null);
         }
+        // 方法表协商，返回服务端方法表
+        else if(RpcConstants.TYPE_METHOD_TABLE_REQUEST == messageType){
+            respondMessageBuilder.messageType(RpcConstants.TYPE_METHOD_TABLE_RESPONSE)
+                    .data(ServiceMapper.getMethodTable());
+        }
         log.info("请求处理完成：id={}", message.getRequestId());
         context.channel().writeAndFlush(respondMessageBuilder.build());
     }
 
-    private RpcResponse handleRequest(ChannelHandlerContext context, RpcRequest rpcRequest){
-        log.info("接收到RPC请求，来自：{}, 目标接口：{}，目标方法：{}",context.channel().remoteAddress(), rpcRequest.getTargetClass(), rpcRequest.getMethodName());
-        // 目标类
-        Class<?> targetClass = rpcRequest.getTargetClass();
-
-        // 获取接口实现类
-        Object instance = ServiceMapper.getServiceImpl(targetClass);
-        log.info("已获得服务实现类实例：{}", instance);
-        // 从Spring容器获取RPC业务Bean
-        RpcResponse.RpcResponseBuilder responseBuilder = RpcResponse
-                .builder()
-                .requestId(rpcRequest.getRequestId());
+    private void handleRequest(ChannelHandlerContext context, RpcRequest rpcRequest, RpcMessage.RpcMessageBuilder respondMessageBuilder){
+        // 查找预先生成的服务方法调用器，协商过方法表的请求只携带方法ID
+        boolean compact = rpcRequest.getMethodId() != null;
+        ServiceInvoker invoker = compact ? ServiceMapper.getInvoker(rpcRequest.getMethodId())
+                : ServiceMapper.getInvoker(rpcRequest.getTargetClass(), rpcRequest.getMethodName(), rpcRequest.getParameterTypes());
+        RpcResponse.RpcResponseBuilder responseBuilder = RpcResponse.builder();
+        if(invoker == null){
+            String target = compact ? "methodId=" + rpcRequest.getMethodId() : rpcRequest.getTargetClass() + "." + rpcRequest.getMethodName();
+            responseBuilder.error(new NoSuchMethodException(target));
+            writeResponse(context, respondMessageBuilder, responseBuilder.build());
+            return;
+        }
+        log.info("接收到RPC请求，来自：{}, 目标方法：{}", context.channel().remoteAddress(), invoker.getSignature());
         try{
             // 调用目标方法
-            Method targetMethod = targetClass.getMethod(rpcRequest.getMethodName(), rpcRequest.getParameterTypes());
-            Object result = targetMethod.invoke(instance, rpcRequest.getParameters());
+            Object result = invoker.invoke(rpcRequest.getParameters());
+            // 异步方法，future完成后写回响应
+            if(result instanceof CompletionStage){
+                ((CompletionStage<?>) result).whenComplete((value, error) -> {
+                    if(error != null){
+                        log.error("异步方法调用异常：", error);
+                        responseBuilder.error(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+                    }
+                    else{
+                        responseBuilder.result(value).returnType(compact ? null : Object.class);
+                    }
+                    writeResponse(context, respondMessageBuilder, responseBuilder.build());
+                });
+                return;
+            }
             // 方法返回类型，如果是void，将返回类型设为Object，避免序列化错误
+            // 使用方法ID的请求，客户端已知方法签名，不再返回类型
             responseBuilder
                     .result(result)
-                    .returnType(targetMethod.getReturnType() == Void.TYPE ? Object.class : targetMethod.getReturnType());
-        }catch (Exception e){
+                    .returnType(compact ? null : invoker.getReturnType());
+        }catch (Throwable e){
             log.error("方法调用异常：", e);
             // 将异常写入响应报文
             responseBuilder.error(e);
         }
-        return responseBuilder.build();
+        writeResponse(context, respondMessageBuilder, responseBuilder.build());
+    }
+
+    private void writeResponse(ChannelHandlerContext context, RpcMessage.RpcMessageBuilder respondMessageBuilder, RpcResponse response){
+        RpcMessage respondMessage = respondMessageBuilder.data(response).build();
+        log.info("请求处理完成：id={}", respondMessage.getRequestId());
+        context.channel().writeAndFlush(respondMessage);
     }
 }
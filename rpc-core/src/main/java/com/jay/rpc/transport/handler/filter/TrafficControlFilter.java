@@ -43,8 +43,8 @@ public class TrafficControlFilter extends Filter {
 
     @Override
     public boolean doFilter(ChannelHandlerContext context, RpcMessage message) throws FilteredException {
-        // 对心跳请求放行
-        if(message.getMessageType() == RpcConstants.TYPE_HEARTBEAT_REQUEST) {
+        // 对心跳请求、方法表协商放行
+        if(message.getMessageType() == RpcConstants.TYPE_HEARTBEAT_REQUEST || message.getMessageType() == RpcConstants.TYPE_METHOD_TABLE_REQUEST) {
             return true;
         }
         if(!rateLimiter.tryAcquire()){
@@ -1,6 +1,11 @@
 package com.jay.rpc.transport.serialize;
 
 import com.jay.common.extention.SPI;
+import com.jay.rpc.util.IoUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Serializer interface
@@ -26,4 +31,31 @@ public interface Serializer {
      * @return object
      */
     <T> T deserialize(byte[] bytes, Class<T> clazz);
+
+    /**
+     * 序列化到输出流
+     * 编码器通过该方法把对象直接写入报文的ByteBuf，避免中间的byte数组
+     * 默认实现先序列化为byte数组，序列化工具可以覆盖该方法直接写流
+     * @param object 对象
+     * @param out 输出流
+     * @param <T> 类型
+     * @throws IOException IOException
+     */
+    default <T> void serialize(T object, OutputStream out) throws IOException {
+        out.write(serialize(object));
+    }
+
+    /**
+     * 从输入流反序列化
+     * 解码器通过该方法直接读取报文ByteBuf，避免先拷贝到byte数组
+     * 默认实现先读取为byte数组，序列化工具可以覆盖该方法直接读流
+     * @param in 输入流
+     * @param clazz 类型
+     * @param <T> 类型
+     * @return object
+     * @throws IOException IOException
+     */
+    default <T> T deserialize(InputStream in, Class<T> clazz) throws IOException {
+        return deserialize(IoUtil.readAll(in), clazz);
+    }
 }
@@ -0,0 +1,91 @@
+package com.jay.rpc.transport.serialize.hessian;
+
+import com.caucho.hessian.io.Hessian2Input;
+import com.caucho.hessian.io.Hessian2Output;
+import com.caucho.hessian.io.SerializerFactory;
+import com.jay.rpc.transport.serialize.Serializer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * <p>
+ *  Hessian2序列化工具
+ *  SerializerFactory缓存每个类型的序列化器，全局共享；Hessian2Input、Hessian2Output每个线程复用一份
+ *  业务类型不要求实现Serializable
+ *  注意：Hessian2只有int、long、double，Object类型中的Short、Byte、Float反序列化后会变成Integer、Double
+ * </p>
+ * @see com.jay.rpc.transport.serialize.Serializer
+ * @author Jay
+ * @date 2021/12/12
+ **/
+public class Hessian2Serializer implements Serializer {
+    private static final SerializerFactory SERIALIZER_FACTORY = new SerializerFactory();
+    static {
+        SERIALIZER_FACTORY.setAllowNonSerializable(true);
+    }
+
+    private static final ThreadLocal<Hessian2Output> OUTPUT_HOLDER = ThreadLocal.withInitial(() -> {
+        Hessian2Output output = new Hessian2Output(null);
+        output.setSerializerFactory(SERIALIZER_FACTORY);
+        return output;
+    });
+    private static final ThreadLocal<Hessian2Input> INPUT_HOLDER = ThreadLocal.withInitial(() -> {
+        Hessian2Input input = new Hessian2Input(null);
+        input.setSerializerFactory(SERIALIZER_FACTORY);
+        return input;
+    });
+
+    @Override
+    public <T> byte[] serialize(T object) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try{
+            serialize(object, out);
+        }catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        try{
+            return deserialize(new ByteArrayInputStream(bytes), clazz);
+        }catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> void serialize(T object, OutputStream out) throws IOException {
+        Hessian2Output output = OUTPUT_HOLDER.get();
+        // 绑定输出流，同时清空引用表
+        output.init(out);
+        try{
+            output.writeObject(object);
+            output.flush();
+        }finally {
+            output.init(null);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T deserialize(InputStream in, Class<T> clazz) throws IOException {
+        Hessian2Input input = INPUT_HOLDER.get();
+        input.init(in);
+        try{
+            return (T) input.readObject(clazz);
+        }catch (IOException | RuntimeException e){
+            // 读取失败时缓冲区可能残留数据，丢弃该实例
+            INPUT_HOLDER.remove();
+            throw e;
+        }finally {
+            input.init(null);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.jay.rpc.transport.serialize.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.util.DefaultInstantiatorStrategy;
+import com.jay.rpc.entity.MethodTable;
+import com.jay.rpc.entity.RpcRequest;
+import com.jay.rpc.entity.RpcResponse;
+import com.jay.rpc.transport.serialize.Serializer;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+
+/**
+ * <p>
+ *  Kryo序列化工具
+ *  Kryo实例和Input、Output缓冲区不是线程安全的，每个线程复用一份
+ *  RPC报文和常用类型预先注册，只写入注册ID，不写类名；注册顺序在两端必须一致，只能在末尾追加
+ *  未注册的业务类型写入类名，不需要额外配置
+ *  异常使用ThrowableSerializer，不反射访问java.lang的私有字段，JDK 17以上不需要--add-opens
+ * </p>
+ * @see com.jay.rpc.transport.serialize.Serializer
+ * @author Jay
+ * @date 2021/12/12
+ **/
+public class KryoSerializer implements Serializer {
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final ThreadLocal<Kryo> KRYO_HOLDER = ThreadLocal.withInitial(KryoSerializer::createKryo);
+    private static final ThreadLocal<Output> OUTPUT_HOLDER = ThreadLocal.withInitial(() -> new Output(BUFFER_SIZE, -1));
+    private static final ThreadLocal<Input> INPUT_HOLDER = ThreadLocal.withInitial(() -> new Input(BUFFER_SIZE));
+
+    private static Kryo createKryo(){
+        Kryo kryo = new Kryo();
+        // 业务类型不要求注册
+        kryo.setRegistrationRequired(false);
+        // 业务对象之间可能有循环引用
+        kryo.setReferences(true);
+        // 没有无参构造器的类型（如StackTraceElement）直接实例化
+        kryo.setInstantiatorStrategy(new DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+        // Throwable及其子类
+        kryo.addDefaultSerializer(Throwable.class, new ThrowableSerializer());
+        kryo.register(RpcRequest.class);
+        kryo.register(RpcResponse.class);
+        kryo.register(MethodTable.class);
+        kryo.register(Class.class);
+        kryo.register(Class[].class);
+        kryo.register(Object[].class);
+        kryo.register(String[].class);
+        kryo.register(byte[].class);
+        kryo.register(ArrayList.class);
+        kryo.register(LinkedList.class);
+        kryo.register(HashMap.class);
+        kryo.register(LinkedHashMap.class);
+        kryo.register(HashSet.class);
+        kryo.register(StackTraceElement.class, new ThrowableSerializer.StackTraceElementSerializer());
+        kryo.register(StackTraceElement[].class);
+        return kryo;
+    }
+
+    @Override
+    public <T> byte[] serialize(T object) {
+        Output output = OUTPUT_HOLDER.get();
+        try{
+            KRYO_HOLDER.get().writeObject(output, object);
+            return output.toBytes();
+        }finally {
+            output.reset();
+        }
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        // 直接读取数组，不需要缓冲区
+        return KRYO_HOLDER.get().readObject(new Input(bytes), clazz);
+    }
+
+    @Override
+    public <T> void serialize(T object, OutputStream out) {
+        Output output = OUTPUT_HOLDER.get();
+        try{
+            // 缓冲区写满时直接写入输出流
+            output.setOutputStream(out);
+            KRYO_HOLDER.get().writeObject(output, object);
+            output.flush();
+        }finally {
+            output.setOutputStream(null);
+        }
+    }
+
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> clazz) {
+        Input input = INPUT_HOLDER.get();
+        try{
+            input.setInputStream(in);
+            return KRYO_HOLDER.get().readObject(input, clazz);
+        }finally {
+            input.setInputStream(null);
+        }
+    }
+}
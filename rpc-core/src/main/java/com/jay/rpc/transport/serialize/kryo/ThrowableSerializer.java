@@ -0,0 +1,108 @@
+package com.jay.rpc.transport.serialize.kryo;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ *  异常序列化
+ *  FieldSerializer需要反射访问Throwable的私有字段，JDK 16以后java.lang默认不开放，序列化异常会失败
+ *  只通过公开方法读写：消息、调用栈、cause；反序列化时优先使用(String)构造器，
+ *  没有该构造器时使用无参构造器（保留类型，丢失消息），都没有时使用RuntimeException并在消息中保留原异常类名
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/12
+ **/
+class ThrowableSerializer extends Serializer<Throwable> {
+
+    @Override
+    public void write(Kryo kryo, Output output, Throwable object) {
+        output.writeString(object.getMessage());
+        writeStackTrace(output, object.getStackTrace());
+        // cause指向自身时getCause返回null
+        kryo.writeClassAndObject(output, object.getCause());
+    }
+
+    @Override
+    public Throwable read(Kryo kryo, Input input, Class<? extends Throwable> type) {
+        String message = input.readString();
+        Throwable throwable = newInstance(type, message);
+        // 先登记引用，cause中可以引用该异常
+        kryo.reference(throwable);
+        throwable.setStackTrace(readStackTrace(input));
+        Throwable cause = (Throwable) kryo.readClassAndObject(input);
+        if(cause != null){
+            try{
+                throwable.initCause(cause);
+            }catch (IllegalStateException | IllegalArgumentException e){
+                // 构造器已经设置了cause
+            }
+        }
+        return throwable;
+    }
+
+    private static void writeStackTrace(Output output, StackTraceElement[] stackTrace){
+        output.writeVarInt(stackTrace.length, true);
+        for (StackTraceElement element : stackTrace) {
+            StackTraceElementSerializer.writeElement(output, element);
+        }
+    }
+
+    private static StackTraceElement[] readStackTrace(Input input){
+        int length = input.readVarInt(true);
+        // 长度来自对端，不按长度预先分配
+        List<StackTraceElement> stackTrace = new ArrayList<>(Math.min(length, 64));
+        for(int i = 0; i < length; i++){
+            stackTrace.add(StackTraceElementSerializer.readElement(input));
+        }
+        return stackTrace.toArray(new StackTraceElement[0]);
+    }
+
+    private static Throwable newInstance(Class<? extends Throwable> type, String message){
+        try{
+            return type.getConstructor(String.class).newInstance(message);
+        }catch (ReflectiveOperationException | RuntimeException e){
+            // 没有(String)构造器
+        }
+        try{
+            // 保留异常类型，调用方可以按类型捕获
+            return type.getConstructor().newInstance();
+        }catch (ReflectiveOperationException | RuntimeException e){
+            // 没有无参构造器
+        }
+        return new RuntimeException(message == null ? type.getName() : type.getName() + ": " + message);
+    }
+
+    /**
+     * StackTraceElement同样不能反射访问，逐个写入公开的属性
+     */
+    static class StackTraceElementSerializer extends Serializer<StackTraceElement> {
+
+        @Override
+        public void write(Kryo kryo, Output output, StackTraceElement object) {
+            writeElement(output, object);
+        }
+
+        @Override
+        public StackTraceElement read(Kryo kryo, Input input, Class<? extends StackTraceElement> type) {
+            return readElement(input);
+        }
+
+        static void writeElement(Output output, StackTraceElement element){
+            output.writeString(element.getClassName());
+            output.writeString(element.getMethodName());
+            output.writeString(element.getFileName());
+            output.writeVarInt(element.getLineNumber(), false);
+        }
+
+        static StackTraceElement readElement(Input input){
+            return new StackTraceElement(input.readString(), input.readString(), input.readString(), input.readVarInt(false));
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package com.jay.rpc.transport.serialize.primitive;
+
+import com.jay.common.enums.SerializerTypeEnum;
+import com.jay.common.extention.ExtensionLoader;
+import com.jay.rpc.constants.RpcConstants;
+import com.jay.rpc.entity.RpcRequest;
+import com.jay.rpc.entity.RpcResponse;
+import com.jay.rpc.transport.serialize.Serializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ *  基本类型快速序列化
+ *  参数只有基本类型、包装类型、String、byte[]的方法（如按ID查询），请求只写入方法ID和带类型标记的参数值，
+ *  整数使用zigzag varint，不需要schema查找，写入ByteBuf时不分配中间对象
+ *  返回值同样是这些类型且没有异常时，响应只写入带类型标记的返回值
+ *
+ *  数据格式：
+ *  1字节格式标记，FAST：请求 = varint方法ID + varint参数个数 + 参数，响应 = 返回值
+ *               EMBEDDED：其余数据是Protostuff序列化的完整对象，用于没有协商方法ID的请求、异常响应等
+ *  每个值：1字节类型标记 + 数据
+ *  参数个数、字符串和byte[]长度来自对端，分配前检查剩余数据量，不按伪造的长度分配内存
+ * </p>
+ * @see com.jay.rpc.transport.serialize.Serializer
+ * @author Jay
+ * @date 2021/12/13
+ **/
+public class PrimitiveSerializer implements Serializer {
+    private static final int EMBEDDED = 0;
+    private static final int FAST = 1;
+
+    /**
+     * 值类型标记
+     */
+    private static final int TAG_NULL = 0;
+    private static final int TAG_FALSE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_BYTE = 3;
+    private static final int TAG_SHORT = 4;
+    private static final int TAG_CHAR = 5;
+    private static final int TAG_INT = 6;
+    private static final int TAG_LONG = 7;
+    private static final int TAG_FLOAT = 8;
+    private static final int TAG_DOUBLE = 9;
+    private static final int TAG_STRING = 10;
+    private static final int TAG_BYTES = 11;
+
+    /**
+     * 类型是否可以使用快速序列化
+     * @param type 类型
+     * @return boolean
+     */
+    public static boolean supports(Class<?> type){
+        return type.isPrimitive() && type != void.class
+                || type == Boolean.class || type == Byte.class || type == Short.class || type == Character.class
+                || type == Integer.class || type == Long.class || type == Float.class || type == Double.class
+                || type == String.class || type == byte[].class;
+    }
+
+    private static boolean supportsValue(Object value){
+        return value == null || supports(value.getClass());
+    }
+
+    @Override
+    public <T> byte[] serialize(T object) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try{
+            serialize(object, out);
+        }catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public <T> T deserialize(byte[] bytes, Class<T> clazz) {
+        try{
+            return deserialize(new ByteArrayInputStream(bytes), clazz);
+        }catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public <T> void serialize(T object, OutputStream out) throws IOException {
+        if(object instanceof RpcRequest && isFastRequest((RpcRequest) object)){
+            RpcRequest request = (RpcRequest) object;
+            Object[] parameters = request.getParameters();
+            int count = parameters == null ? 0 : parameters.length;
+            out.write(FAST);
+            writeVarInt(out, request.getMethodId());
+            writeVarInt(out, count);
+            for(int i = 0; i < count; i++){
+                writeValue(out, parameters[i]);
+            }
+        }
+        else if(object instanceof RpcResponse && isFastResponse((RpcResponse) object)){
+            out.write(FAST);
+            writeValue(out, ((RpcResponse) object).getResult());
+        }
+        else{
+            out.write(EMBEDDED);
+            embedded().serialize(object, out);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T deserialize(InputStream in, Class<T> clazz) throws IOException {
+        int format = in.read();
+        if(format == EMBEDDED){
+            return embedded().deserialize(in, clazz);
+        }
+        if(format != FAST){
+            throw new StreamCorruptedException("unknown primitive serializer format: " + format);
+        }
+        if(clazz == RpcRequest.class){
+            int methodId = readVarInt(in);
+            // 每个参数至少1字节
+            Object[] parameters = new Object[readLength(in)];
+            for(int i = 0; i < parameters.length; i++){
+                parameters[i] = readValue(in);
+            }
+            RpcRequest request = new RpcRequest();
+            request.setMethodId(methodId);
+            request.setParameters(parameters);
+            return (T) request;
+        }
+        if(clazz == RpcResponse.class){
+            RpcResponse response = new RpcResponse();
+            response.setResult(readValue(in));
+            return (T) response;
+        }
+        throw new StreamCorruptedException("unexpected primitive serializer data for " + clazz);
+    }
+
+    /**
+     * 已协商方法ID，参数都是可以快速序列化的类型
+     */
+    private static boolean isFastRequest(RpcRequest request){
+        if(request.getMethodId() == null){
+            return false;
+        }
+        Object[] parameters = request.getParameters();
+        if(parameters != null){
+            for(Object parameter : parameters){
+                if(!supportsValue(parameter)){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 没有异常，客户端不需要返回值类型，返回值可以快速序列化
+     */
+    private static boolean isFastResponse(RpcResponse response){
+        return response.getError() == null && response.getReturnType() == null && supportsValue(response.getResult());
+    }
+
+    private static Serializer embedded(){
+        return ExtensionLoader.getExtensionLoader(Serializer.class).getExtension(SerializerTypeEnum.PROTOSTUFF.type);
+    }
+
+    private static void writeValue(OutputStream out, Object value) throws IOException {
+        if(value == null){
+            out.write(TAG_NULL);
+        }
+        else if(value instanceof Long){
+            out.write(TAG_LONG);
+            writeVarLong(out, zigzag((Long) value));
+        }
+        else if(value instanceof Integer){
+            out.write(TAG_INT);
+            writeVarLong(out, zigzag((Integer) value));
+        }
+        else if(value instanceof String){
+            out.write(TAG_STRING);
+            writeString(out, (String) value);
+        }
+        else if(value instanceof Boolean){
+            out.write((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        }
+        else if(value instanceof Byte){
+            out.write(TAG_BYTE);
+            out.write((Byte) value);
+        }
+        else if(value instanceof Short){
+            out.write(TAG_SHORT);
+            writeVarLong(out, zigzag((Short) value));
+        }
+        else if(value instanceof Character){
+            out.write(TAG_CHAR);
+            writeVarInt(out, (Character) value);
+        }
+        else if(value instanceof Float){
+            out.write(TAG_FLOAT);
+            writeFixed(out, Float.floatToRawIntBits((Float) value), 4);
+        }
+        else if(value instanceof Double){
+            out.write(TAG_DOUBLE);
+            writeFixed(out, Double.doubleToRawLongBits((Double) value), 8);
+        }
+        else if(value instanceof byte[]){
+            byte[] bytes = (byte[]) value;
+            out.write(TAG_BYTES);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+        else{
+            throw new IllegalArgumentException("unsupported primitive value: " + value.getClass());
+        }
+    }
+
+    private static Object readValue(InputStream in) throws IOException {
+        int tag = in.read();
+        switch (tag){
+            case TAG_NULL: return null;
+            case TAG_FALSE: return Boolean.FALSE;
+            case TAG_TRUE: return Boolean.TRUE;
+            case TAG_BYTE: return (byte) readByte(in);
+            case TAG_SHORT: return (short) unzigzag(readVarLong(in));
+            case TAG_CHAR: return (char) readVarInt(in);
+            case TAG_INT: return (int) unzigzag(readVarLong(in));
+            case TAG_LONG: return unzigzag(readVarLong(in));
+            case TAG_FLOAT: return Float.intBitsToFloat((int) readFixed(in, 4));
+            case TAG_DOUBLE: return Double.longBitsToDouble(readFixed(in, 8));
+            case TAG_STRING: return new String(readBytes(in, readLength(in)), StandardCharsets.UTF_8);
+            case TAG_BYTES: return readBytes(in, readLength(in));
+            default: throw new StreamCorruptedException("unknown primitive value tag: " + tag);
+        }
+    }
+
+    private static void writeString(OutputStream out, String value) throws IOException {
+        if(out instanceof ByteBufOutputStream){
+            // 直接编码到ByteBuf，不生成中间byte数组
+            ByteBuf buffer = ((ByteBufOutputStream) out).buffer();
+            writeVarInt(out, ByteBufUtil.utf8Bytes(value));
+            ByteBufUtil.writeUtf8(buffer, value);
+        }
+        else{
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static long zigzag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        while((value & ~0x7FL) != 0){
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        // 方法ID、长度等都是非负int
+        long value = readVarLong(in);
+        if(value < 0 || value > Integer.MAX_VALUE){
+            throw new StreamCorruptedException("malformed varint");
+        }
+        return (int) value;
+    }
+
+    /**
+     * 读取个数或长度，不能超过剩余的数据量
+     * ByteBufInputStream、ByteArrayInputStream的available是准确的剩余字节数，
+     * 其他输入流只检查解压后数据的长度上限
+     */
+    private static int readLength(InputStream in) throws IOException {
+        int length = readVarInt(in);
+        if(length > RpcConstants.MAX_DECOMPRESSED_LENGTH){
+            throw new StreamCorruptedException("invalid primitive length: " + length);
+        }
+        if((in instanceof ByteBufInputStream || in instanceof ByteArrayInputStream) && length > in.available()){
+            throw new EOFException("primitive length " + length + " exceeds remaining " + in.available() + " bytes");
+        }
+        return length;
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            int b = readByte(in);
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("malformed varint");
+    }
+
+    private static void writeFixed(OutputStream out, long value, int bytes) throws IOException {
+        for(int shift = (bytes - 1) * 8; shift >= 0; shift -= 8){
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static long readFixed(InputStream in, int bytes) throws IOException {
+        long value = 0;
+        for(int i = 0; i < bytes; i++){
+            value = (value << 8) | readByte(in);
+        }
+        return value;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int b = in.read();
+        if(b < 0){
+            throw new EOFException();
+        }
+        return b;
+    }
+
+    private static byte[] readBytes(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        int offset = 0;
+        while(offset < length){
+            int n = in.read(bytes, offset, length - offset);
+            if(n < 0){
+                throw new EOFException();
+            }
+            offset += n;
+        }
+        return bytes;
+    }
+}
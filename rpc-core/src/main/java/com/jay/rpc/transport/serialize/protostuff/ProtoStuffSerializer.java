@@ -6,6 +6,9 @@ import io.protostuff.ProtostuffIOUtil;
 import io.protostuff.Schema;
 import io.protostuff.runtime.RuntimeSchema;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -24,12 +27,17 @@ public class ProtoStuffSerializer implements Serializer {
      */
     private static final Map<Class<?>, Schema<?>> SCHEMA_CACHE = new ConcurrentHashMap<>();
 
+    /**
+     * 每个线程复用一个LinkedBuffer，避免每次序列化分配
+     */
+    private static final ThreadLocal<LinkedBuffer> BUFFER_HOLDER = ThreadLocal.withInitial(() -> LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE));
+
     @SuppressWarnings("unchecked")
     @Override
     public <T> byte[] serialize(T object){
         Class<T> clazz = (Class<T>)object.getClass();
         Schema<T> schema = getSchema(clazz);
-        LinkedBuffer buffer = LinkedBuffer.allocate(LinkedBuffer.DEFAULT_BUFFER_SIZE);
+        LinkedBuffer buffer = BUFFER_HOLDER.get();
         try{
             return ProtostuffIOUtil.toByteArray(object, schema, buffer);
         }finally {
@@ -37,6 +45,20 @@ public class ProtoStuffSerializer implements Serializer {
         }
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> void serialize(T object, OutputStream out) throws IOException {
+        Class<T> clazz = (Class<T>)object.getClass();
+        Schema<T> schema = getSchema(clazz);
+        LinkedBuffer buffer = BUFFER_HOLDER.get();
+        try{
+            // 直接写入输出流
+            ProtostuffIOUtil.writeTo(out, object, schema, buffer);
+        }finally {
+            buffer.clear();
+        }
+    }
+
     @Override
     public <T> T deserialize(byte[] bytes, Class<T> clazz){
         Schema<T> schema = getSchema(clazz);
@@ -45,6 +67,20 @@ public class ProtoStuffSerializer implements Serializer {
         return result;
     }
 
+    @Override
+    public <T> T deserialize(InputStream in, Class<T> clazz) throws IOException {
+        Schema<T> schema = getSchema(clazz);
+        T result = schema.newMessage();
+        LinkedBuffer buffer = BUFFER_HOLDER.get();
+        try{
+            // 直接从输入流读取，LinkedBuffer作为读缓冲
+            ProtostuffIOUtil.mergeFrom(in, result, schema, buffer);
+        }finally {
+            buffer.clear();
+        }
+        return result;
+    }
+
     @SuppressWarnings("unchecked")
     private <T> Schema<T> getSchema(Class<T> clazz){
         Schema<T> schema = (Schema<T>) SCHEMA_CACHE.get(clazz);
@@ -0,0 +1,80 @@
+package com.jay.rpc.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * <p>
+ *  IO工具类
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/11/28
+ **/
+public class IoUtil {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    /**
+     * 读取输入流的全部数据
+     * @param in 输入流
+     * @return byte数组
+     * @throws IOException IOException
+     */
+    public static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(in.available(), BUFFER_SIZE));
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while((n = in.read(buffer, 0, BUFFER_SIZE)) > -1){
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 限制可以读取的数据量，读取超过limit字节时抛出异常
+     * 用于解压流等数据量由对端决定的输入流
+     * @param in 输入流
+     * @param limit 最多读取的字节数
+     * @return 输入流
+     */
+    public static InputStream limit(InputStream in, long limit){
+        return new FilterInputStream(in){
+            private long remaining = limit;
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if(b != -1){
+                    consume(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if(n > 0){
+                    consume(n);
+                }
+                return n;
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                long skipped = super.skip(n);
+                consume(skipped);
+                return skipped;
+            }
+
+            private void consume(long n) throws IOException {
+                remaining -= n;
+                if(remaining < 0){
+                    throw new IOException("data exceeds " + limit + " bytes");
+                }
+            }
+        };
+    }
+}
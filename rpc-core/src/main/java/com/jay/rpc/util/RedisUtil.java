@@ -4,9 +4,13 @@ import org.springframework.beans.factory.annotation.Value;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
 
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * <p>
@@ -105,6 +109,78 @@ public class RedisUtil {
         }
     }
 
+    /**
+     * smembers
+     * @param key key
+     * @return Set
+     */
+    public Set<String> members(String key){
+        try(Jedis jedis = jedisPool.getResource()){
+            return jedis.smembers(key);
+        }
+    }
+
+    /**
+     * 获取有序集合中分数在[min, max]之间的成员
+     * @param key key
+     * @param min 最小分数
+     * @param max 最大分数
+     * @return Set
+     */
+    public Set<String> rangeByScore(String key, double min, double max){
+        try(Jedis jedis = jedisPool.getResource()){
+            return jedis.zrangeByScore(key, min, max);
+        }
+    }
+
+    /**
+     * 删除有序集合中分数在[min, max]之间的成员
+     * @param key key
+     * @param min 最小分数
+     * @param max 最大分数
+     * @return 删除数量
+     */
+    public long removeRangeByScore(String key, double min, double max){
+        try(Jedis jedis = jedisPool.getResource()){
+            return jedis.zremrangeByScore(key, min, max);
+        }
+    }
+
+    /**
+     * publish
+     * @param channel 频道
+     * @param message 消息
+     */
+    public void publish(String channel, String message){
+        try(Jedis jedis = jedisPool.getResource()){
+            jedis.publish(channel, message);
+        }
+    }
+
+    /**
+     * 使用pipeline批量执行命令，一次网络往返
+     * @param commands 命令
+     * @return 每条命令的结果
+     */
+    public List<Object> pipelined(Consumer<Pipeline> commands){
+        try(Jedis jedis = jedisPool.getResource()){
+            Pipeline pipeline = jedis.pipelined();
+            commands.accept(pipeline);
+            return pipeline.syncAndReturnAll();
+        }
+    }
+
+    /**
+     * 订阅频道，阻塞直到取消订阅或连接断开
+     * @param pubSub 消息处理
+     * @param channels 频道
+     */
+    public void subscribe(JedisPubSub pubSub, String... channels){
+        try(Jedis jedis = jedisPool.getResource()){
+            jedis.subscribe(pubSub, channels);
+        }
+    }
+
     protected JedisPool getJedisPool(){
         return jedisPool;
     }
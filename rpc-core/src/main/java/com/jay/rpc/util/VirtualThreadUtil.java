@@ -0,0 +1,102 @@
+package com.jay.rpc.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * <p>
+ *  虚拟线程工具
+ *  框架需要兼容JDK8编译，所以通过反射使用JDK21的虚拟线程和JFR事件流API
+ *  当前JDK不支持时，isAvailable返回false，由调用方退回平台线程
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/11/30
+ **/
+@Slf4j
+public class VirtualThreadUtil {
+    /**
+     * 虚拟线程pinned事件
+     */
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    /**
+     * pinned事件阈值，超过该时长才记录
+     */
+    private static final Duration PINNED_THRESHOLD = Duration.ofMillis(20);
+
+    private static final boolean AVAILABLE = checkAvailable();
+
+    private static boolean checkAvailable(){
+        try{
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        }catch (NoSuchMethodException e){
+            return false;
+        }
+    }
+
+    /**
+     * 当前JDK是否支持虚拟线程
+     * @return boolean
+     */
+    public static boolean isAvailable(){
+        return AVAILABLE;
+    }
+
+    /**
+     * 创建每个任务一个虚拟线程的Executor
+     * @param namePrefix 线程名前缀
+     * @return ExecutorService
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix){
+        if(!AVAILABLE){
+            throw new UnsupportedOperationException("virtual thread requires JDK 21+");
+        }
+        try{
+            // Thread.ofVirtual().name(namePrefix, 0).factory()
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            // Executors.newThreadPerTaskExecutor(factory)
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        }catch (ReflectiveOperationException e){
+            throw new IllegalStateException("failed to create virtual thread executor", e);
+        }
+    }
+
+    /**
+     * 通过JFR事件流监听虚拟线程pinned事件，记录日志并计数
+     * 虚拟线程在synchronized块中阻塞时会占住载体线程，即pinned
+     * @param pinnedCounter pinned事件计数器
+     */
+    public static void startPinnedMonitor(LongAdder pinnedCounter){
+        try{
+            // RecordingStream stream = new RecordingStream()
+            Class<?> streamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            Object stream = streamClass.getConstructor().newInstance();
+            // stream.enable(PINNED_EVENT).withThreshold(PINNED_THRESHOLD)
+            Object settings = streamClass.getMethod("enable", String.class).invoke(stream, PINNED_EVENT);
+            Class.forName("jdk.jfr.EventSettings").getMethod("withThreshold", Duration.class).invoke(settings, PINNED_THRESHOLD);
+            // stream.onEvent(PINNED_EVENT, consumer)
+            Consumer<Object> consumer = event -> {
+                pinnedCounter.increment();
+                log.warn("虚拟线程pinned：{}", event);
+            };
+            streamClass.getMethod("onEvent", String.class, Consumer.class).invoke(stream, PINNED_EVENT, consumer);
+            // stream.startAsync()
+            streamClass.getMethod("startAsync").invoke(stream);
+            log.info("虚拟线程pinned监控已开启，阈值：{}ms", PINNED_THRESHOLD.toMillis());
+        }catch (ReflectiveOperationException | RuntimeException e){
+            log.warn("无法开启虚拟线程pinned监控：{}", e.toString());
+        }
+    }
+}
@@ -110,6 +110,29 @@ public class ZookeeperUtil {
         return zooKeeper.getChildren(path, false);
     }
 
+    /**
+     * 列出子节点并注册watcher
+     * 节点存在时注册子节点watch，不存在时注册exists watch，等待节点创建
+     * watcher只触发一次，需要在回调中重新注册
+     * @param path path
+     * @param watcher watcher
+     * @return List，节点不存在返回null
+     * @throws KeeperException ZookeeperException
+     * @throws InterruptedException Interrupted
+     */
+    public List<String> watchChildren(String path, Watcher watcher) throws KeeperException, InterruptedException {
+        while(true){
+            try{
+                return zooKeeper.getChildren(path, watcher);
+            }catch (KeeperException.NoNodeException e){
+                // 节点不存在，监听节点创建；如果期间节点已被创建，重新获取子节点
+                if(zooKeeper.exists(path, watcher) == null){
+                    return null;
+                }
+            }
+        }
+    }
+
     /**
      * 获取节点数据
      * @param path 路径
@@ -0,0 +1,217 @@
+package com.jay.rpc.compress.gzip;
+
+import com.jay.rpc.constants.RpcConstants;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * <p>
+ *  GzipCompressor测试
+ *  ByteBuf接口覆盖堆内存和直接内存的组合，结果需要与JDK的GZIP流互相兼容
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/10
+ **/
+public class GzipCompressorTest {
+
+    private final GzipCompressor compressor = new GzipCompressor();
+
+    @Test
+    public void testRoundTripHeapAndDirect() throws IOException {
+        for (byte[] data : samples()) {
+            for (boolean directSrc : new boolean[]{false, true}) {
+                for (boolean directDest : new boolean[]{false, true}) {
+                    byte[] compressed = compress(data, directSrc, directDest);
+                    assertArrayEquals(data, decompress(compressed, directSrc, directDest));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testByteArray() {
+        for (byte[] data : samples()) {
+            assertArrayEquals(data, compressor.decompress(compressor.compress(data)));
+        }
+    }
+
+    @Test
+    public void testDecodedByJdk() throws IOException {
+        for (byte[] data : samples()) {
+            byte[] compressed = compress(data, true, false);
+            try(GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))){
+                assertArrayEquals(data, readAll(in));
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeJdkOutput() throws IOException {
+        for (byte[] data : samples()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try(GZIPOutputStream gzip = new GZIPOutputStream(out)){
+                gzip.write(data);
+            }
+            assertArrayEquals(data, decompress(out.toByteArray(), false, false));
+            assertArrayEquals(data, decompress(out.toByteArray(), true, true));
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void testTruncatedTrailerHeap() throws IOException {
+        byte[] compressed = compress(text(1024), false, false);
+        decompress(truncate(compressed, 3), false, false);
+    }
+
+    @Test(expected = ZipException.class)
+    public void testTruncatedTrailerDirect() throws IOException {
+        byte[] compressed = compress(text(1024), false, false);
+        decompress(truncate(compressed, 3), true, true);
+    }
+
+    @Test(expected = ZipException.class)
+    public void testTruncatedData() throws IOException {
+        byte[] compressed = compress(random(70 * 1024), false, false);
+        decompress(truncate(compressed, compressed.length / 2), true, false);
+    }
+
+    @Test(expected = ZipException.class)
+    public void testCorruptCrcHeap() throws IOException {
+        byte[] compressed = compress(text(1024), false, false);
+        // 尾部前4字节为CRC32
+        compressed[compressed.length - 8] ^= 0x01;
+        decompress(compressed, false, false);
+    }
+
+    @Test(expected = ZipException.class)
+    public void testCorruptLengthDirect() throws IOException {
+        byte[] compressed = compress(text(1024), false, false);
+        // 尾部后4字节为原始长度
+        compressed[compressed.length - 4] ^= 0x01;
+        decompress(compressed, true, true);
+    }
+
+    @Test(expected = ZipException.class)
+    public void testOversizedHeap() throws IOException {
+        decompress(bomb(), false, false);
+    }
+
+    @Test(expected = ZipException.class)
+    public void testOversizedDirect() throws IOException {
+        decompress(bomb(), true, true);
+    }
+
+    @Test(expected = IOException.class)
+    public void testOversizedStream() throws IOException {
+        try(InputStream in = compressor.decompress(new ByteArrayInputStream(bomb()))){
+            byte[] buffer = new byte[8192];
+            while(in.read(buffer) != -1){
+                // 读取到超过限制
+            }
+        }
+    }
+
+    @Test
+    public void testMaxLengthAllowed() throws IOException {
+        byte[] data = new byte[RpcConstants.MAX_DECOMPRESSED_LENGTH];
+        assertArrayEquals(data, decompress(compress(data, false, false), false, false));
+    }
+
+        private byte[] compress(byte[] data, boolean directSrc, boolean directDest) {
+        ByteBuf src = buffer(data, directSrc);
+        ByteBuf dest = directDest ? Unpooled.directBuffer(64) : Unpooled.buffer(64);
+        try{
+            compressor.compress(src, dest);
+            return toArray(dest);
+        }finally {
+            src.release();
+            dest.release();
+        }
+    }
+
+    private byte[] decompress(byte[] data, boolean directSrc, boolean directDest) throws IOException {
+        ByteBuf src = buffer(data, directSrc);
+        ByteBuf dest = directDest ? Unpooled.directBuffer(64) : Unpooled.buffer(64);
+        try{
+            compressor.decompress(src, dest);
+            return toArray(dest);
+        }finally {
+            src.release();
+            dest.release();
+        }
+    }
+
+    private static ByteBuf buffer(byte[] data, boolean direct){
+        ByteBuf buf = direct ? Unpooled.directBuffer(data.length) : Unpooled.buffer(data.length);
+        return buf.writeBytes(data);
+    }
+
+    private static byte[] toArray(ByteBuf buf){
+        byte[] result = new byte[buf.readableBytes()];
+        buf.readBytes(result);
+        return result;
+    }
+
+    /**
+     * 解压后比MAX_DECOMPRESSED_LENGTH多1字节的全0数据，压缩后只有十几KB
+     */
+    private static byte[] bomb() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(GZIPOutputStream gzip = new GZIPOutputStream(out)){
+            byte[] zeros = new byte[64 * 1024];
+            for(int i = 0; i < RpcConstants.MAX_DECOMPRESSED_LENGTH / zeros.length; i++){
+                gzip.write(zeros);
+            }
+            gzip.write(0);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] truncate(byte[] data, int removed){
+        byte[] result = new byte[data.length - removed];
+        System.arraycopy(data, 0, result, 0, result.length);
+        return result;
+    }
+
+    private static byte[][] samples(){
+        return new byte[][]{new byte[0], text(100), text(70 * 1024), random(70 * 1024)};
+    }
+
+    private static byte[] text(int length){
+        byte[] data = new byte[length];
+        byte[] pattern = "{\"id\":12345,\"name\":\"simple-rpc\",\"tags\":[\"a\",\"b\"]}".getBytes();
+        for(int i = 0; i < length; i++){
+            data[i] = pattern[i % pattern.length];
+        }
+        return data;
+    }
+
+    private static byte[] random(int length){
+        byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] readAll(GZIPInputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while((n = in.read(buffer)) != -1){
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,139 @@
+package com.jay.rpc.compress.stream;
+
+import com.jay.rpc.constants.RpcConstants;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ *  连接级压缩流测试
+ *  同一对StreamDeflater、StreamInflater按顺序处理多条消息，模拟一条连接
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/10
+ **/
+public class StreamCompressionTest {
+
+    private final StreamDeflater deflater = new StreamDeflater();
+    private final StreamInflater inflater = new StreamInflater();
+
+    @After
+    public void close(){
+        deflater.close();
+        inflater.close();
+    }
+
+    @Test
+    public void testMultipleFrames() throws ZipException {
+        for(int i = 0; i < 200; i++){
+            byte[] data = message(i, 100 + i);
+            assertArrayEquals(data, inflate(deflate(data, i % 2 == 0), i % 3 == 0));
+        }
+    }
+
+    @Test
+    public void testLaterFramesSmaller() throws ZipException {
+        byte[] data = message(1, 500);
+        byte[] first = deflate(data, false);
+        assertArrayEquals(data, inflate(first, false));
+        // 后面的消息可以引用前面的消息
+        byte[] second = deflate(data, false);
+        assertArrayEquals(data, inflate(second, false));
+        assertTrue(second.length < first.length);
+    }
+
+    @Test
+    public void testLargeFrames() throws ZipException {
+        byte[][] frames = {message(7, 20 * 1024), random(20 * 1024), new byte[0], message(8, 64 * 1024 + 1)};
+        for (byte[] data : frames) {
+            assertArrayEquals(data, inflate(deflate(data, false), false));
+            assertArrayEquals(data, inflate(deflate(data, true), true));
+        }
+    }
+
+    @Test
+    public void testEmptyFrames() throws ZipException {
+        // 第一条消息和中间的消息为空
+        byte[][] frames = {new byte[0], message(1, 300), new byte[0], new byte[0], message(2, 300)};
+        for (byte[] data : frames) {
+            assertArrayEquals(data, inflate(deflate(data, false), false));
+        }
+    }
+
+    @Test(expected = ZipException.class)
+    public void testCorruptFrame() throws ZipException {
+        assertArrayEquals(message(1, 200), inflate(deflate(message(1, 200), false), false));
+        byte[] compressed = deflate(message(2, 200), false);
+        // 每条消息从字节边界开始，块类型改为保留值11
+        compressed[0] |= 0x06;
+        inflate(compressed, false);
+    }
+
+    @Test(expected = ZipException.class)
+    public void testOversizedFrame() throws ZipException {
+        assertArrayEquals(message(1, 200), inflate(deflate(message(1, 200), false), false));
+        // 全0数据压缩后很小，解压后比上限多1字节
+        inflate(deflate(new byte[RpcConstants.MAX_DECOMPRESSED_LENGTH + 1], false), false);
+    }
+
+    private byte[] deflate(byte[] data, boolean direct){
+        ByteBuf src = buffer(data, direct);
+        ByteBuf dest = direct ? Unpooled.directBuffer(64) : Unpooled.buffer(64);
+        try{
+            deflater.compress(src, dest);
+            return toArray(dest);
+        }finally {
+            src.release();
+            dest.release();
+        }
+    }
+
+    private byte[] inflate(byte[] data, boolean direct) throws ZipException {
+        ByteBuf src = buffer(data, direct);
+        ByteBuf dest = direct ? Unpooled.directBuffer(64) : Unpooled.buffer(64);
+        try{
+            inflater.decompress(src, dest);
+            return toArray(dest);
+        }finally {
+            src.release();
+            dest.release();
+        }
+    }
+
+    private static ByteBuf buffer(byte[] data, boolean direct){
+        ByteBuf buf = direct ? Unpooled.directBuffer(data.length) : Unpooled.buffer(data.length);
+        return buf.writeBytes(data);
+    }
+
+    private static byte[] toArray(ByteBuf buf){
+        byte[] result = new byte[buf.readableBytes()];
+        buf.readBytes(result);
+        return result;
+    }
+
+    /**
+     * 结构相似、内容不同的消息
+     */
+    private static byte[] message(int id, int length){
+        StringBuilder builder = new StringBuilder(length);
+        while(builder.length() < length){
+            builder.append("{\"requestId\":").append(id++).append(",\"method\":\"getUser\",\"args\":[").append(id * 31).append("]}");
+        }
+        return builder.substring(0, length).getBytes();
+    }
+
+    private static byte[] random(int length){
+        byte[] data = new byte[length];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+}
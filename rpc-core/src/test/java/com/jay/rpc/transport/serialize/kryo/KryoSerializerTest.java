@@ -0,0 +1,98 @@
+package com.jay.rpc.transport.serialize.kryo;
+
+import com.jay.rpc.entity.RpcResponse;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * <p>
+ *  KryoSerializer测试
+ *  异常响应在JDK 17以上不需要--add-opens
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/12
+ **/
+public class KryoSerializerTest {
+
+    private final KryoSerializer serializer = new KryoSerializer();
+
+    @Test
+    public void testErrorResponse() throws IOException {
+        IllegalStateException error = new IllegalStateException("服务异常", new IllegalArgumentException("参数错误"));
+        RpcResponse response = new RpcResponse();
+        response.setError(error);
+
+        RpcResponse result = roundTrip(response);
+        Throwable decoded = result.getError();
+        assertEquals(IllegalStateException.class, decoded.getClass());
+        assertEquals("服务异常", decoded.getMessage());
+        assertStackTraceEquals(error.getStackTrace(), decoded.getStackTrace());
+        assertEquals(IllegalArgumentException.class, decoded.getCause().getClass());
+        assertEquals("参数错误", decoded.getCause().getMessage());
+        assertNull(decoded.getCause().getCause());
+    }
+
+    @Test
+    public void testErrorWithoutStringConstructor() throws IOException {
+        RpcResponse response = new RpcResponse();
+        response.setError(new NoMessageException());
+        assertEquals(NoMessageException.class, roundTrip(response).getError().getClass());
+
+        response.setError(new CodeException(404));
+        Throwable decoded = roundTrip(response).getError();
+        assertEquals(RuntimeException.class, decoded.getClass());
+        assertTrue(decoded.getMessage().contains(CodeException.class.getName()));
+        assertTrue(decoded.getMessage().contains("404"));
+    }
+
+    @Test
+    public void testResultReferences() throws IOException {
+        Object[] shared = {"a", 1L};
+        RpcResponse response = new RpcResponse();
+        response.setResult(new Object[]{shared, shared});
+        Object[] result = (Object[]) roundTrip(response).getResult();
+        assertSame(result[0], result[1]);
+        assertArrayEquals(shared, (Object[]) result[0]);
+    }
+
+    private static void assertStackTraceEquals(StackTraceElement[] expected, StackTraceElement[] actual){
+        assertEquals(expected.length, actual.length);
+        for(int i = 0; i < expected.length; i++){
+            // JDK 9以上的模块、类加载器信息不传输
+            assertEquals(expected[i].getClassName(), actual[i].getClassName());
+            assertEquals(expected[i].getMethodName(), actual[i].getMethodName());
+            assertEquals(expected[i].getFileName(), actual[i].getFileName());
+            assertEquals(expected[i].getLineNumber(), actual[i].getLineNumber());
+        }
+    }
+
+    private RpcResponse roundTrip(RpcResponse response) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        serializer.serialize(response, out);
+        RpcResponse fromStream = serializer.deserialize(new ByteArrayInputStream(out.toByteArray()), RpcResponse.class);
+        RpcResponse fromBytes = serializer.deserialize(serializer.serialize(response), RpcResponse.class);
+        assertEquals(String.valueOf(fromBytes.getError()), String.valueOf(fromStream.getError()));
+        return fromStream;
+    }
+
+    public static class NoMessageException extends RuntimeException {
+        public NoMessageException() {
+        }
+    }
+
+    public static class CodeException extends RuntimeException {
+        public CodeException(int code) {
+            super("code " + code);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.jay.rpc.transport.serialize.primitive;
+
+import com.jay.rpc.entity.RpcRequest;
+import com.jay.rpc.entity.RpcResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StreamCorruptedException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * <p>
+ *  PrimitiveSerializer测试
+ *  快速格式覆盖所有类型标记和边界值，其他数据回退到protostuff
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/13
+ **/
+public class PrimitiveSerializerTest {
+    private static final int EMBEDDED = 0;
+    private static final int FAST = 1;
+
+    private final PrimitiveSerializer serializer = new PrimitiveSerializer();
+
+    @Test
+    public void testAllTags() throws IOException {
+        Object[] parameters = {
+                null, false, true,
+                (byte) -128, (short) -32768, 'a', 42, 42L,
+                1.5f, 2.5d, "simple-rpc", new byte[]{1, 2, 3}
+        };
+        assertParameters(parameters);
+    }
+
+    @Test
+    public void testBoundaryValues() throws IOException {
+        Object[] parameters = {
+                Long.MIN_VALUE, Long.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, -1L, -1, 0,
+                Short.MIN_VALUE, Short.MAX_VALUE, Byte.MAX_VALUE,
+                '\uffff', '\u0000',
+                Float.NaN, Float.intBitsToFloat(0x7fc00001), Float.NEGATIVE_INFINITY, -0.0f,
+                Double.NaN, Double.MIN_VALUE, -0.0d,
+                "", new byte[0]
+        };
+        RpcRequest result = roundTrip(request(parameters), false);
+        assertParameters(parameters);
+        // NaN的位保持不变
+        assertEquals(0x7fc00001, Float.floatToRawIntBits((Float) result.getParameters()[13]));
+        assertEquals(Double.doubleToRawLongBits(-0.0d), Double.doubleToRawLongBits((Double) result.getParameters()[18]));
+    }
+
+    @Test
+    public void testNullParameters() throws IOException {
+        RpcRequest request = request();
+        request.setParameters(null);
+        RpcRequest result = roundTrip(request, false);
+        assertEquals(7, (int) result.getMethodId());
+        assertEquals(0, result.getParameters().length);
+
+        result = roundTrip(request(null, null), true);
+        assertArrayEquals(new Object[]{null, null}, result.getParameters());
+    }
+
+    @Test
+    public void testMultibyteStrings() throws IOException {
+        String[] values = {"中文参数", "é", "😀 emoji", "混合 mixed ✓ ࠀ ߿", repeat("字", 5000)};
+        for (String value : values) {
+            RpcRequest request = request(value);
+            // 写入ByteBuf与写入普通输出流的结果一致
+            assertArrayEquals(serializer.serialize(request), serializeToByteBuf(request));
+            assertEquals(value, roundTrip(request, false).getParameters()[0]);
+            assertEquals(value, roundTrip(request, true).getParameters()[0]);
+        }
+    }
+
+    @Test
+    public void testFastResponse() throws IOException {
+        for (Object value : new Object[]{null, Long.MIN_VALUE, "结果", 'x', new byte[]{9}}) {
+            RpcResponse response = new RpcResponse();
+            response.setResult(value);
+            byte[] bytes = serializer.serialize(response);
+            assertEquals(FAST, bytes[0]);
+            Object result = serializer.deserialize(bytes, RpcResponse.class).getResult();
+            if(value instanceof byte[]){
+                assertArrayEquals((byte[]) value, (byte[]) result);
+            }
+            else{
+                assertEquals(value, result);
+            }
+        }
+    }
+
+    @Test
+    public void testErrorResponseEmbedded() throws IOException {
+        RpcResponse response = new RpcResponse();
+        response.setError(new IllegalStateException("服务异常"));
+        byte[] bytes = serializer.serialize(response);
+        assertEquals(EMBEDDED, bytes[0]);
+        RpcResponse result = serializer.deserialize(bytes, RpcResponse.class);
+        assertNotNull(result.getError());
+        assertEquals("服务异常", result.getError().getMessage());
+        assertNull(result.getResult());
+    }
+
+    @Test
+    public void testDtoResponseEmbedded() throws IOException {
+        RpcResponse response = new RpcResponse();
+        response.setResult(new User(1L, "张三"));
+        response.setReturnType(User.class);
+        byte[] bytes = serializer.serialize(response);
+        assertEquals(EMBEDDED, bytes[0]);
+        RpcResponse result = serializer.deserialize(new ByteArrayInputStream(bytes), RpcResponse.class);
+        assertEquals(User.class, result.getReturnType());
+        User user = (User) result.getResult();
+        assertEquals(1L, user.id);
+        assertEquals("张三", user.name);
+    }
+
+    @Test
+    public void testDtoParameterEmbedded() throws IOException {
+        RpcRequest request = request(1, new User(2L, "李四"));
+        byte[] bytes = serializer.serialize(request);
+        assertEquals(EMBEDDED, bytes[0]);
+        RpcRequest result = serializer.deserialize(bytes, RpcRequest.class);
+        assertEquals(7, (int) result.getMethodId());
+        assertEquals(1, result.getParameters()[0]);
+        assertEquals("李四", ((User) result.getParameters()[1]).name);
+    }
+
+    @Test
+    public void testRequestWithoutMethodIdEmbedded() throws IOException {
+        RpcRequest request = request(1L);
+        request.setMethodId(null);
+        request.setMethodName("getUser");
+        byte[] bytes = serializer.serialize(request);
+        assertEquals(EMBEDDED, bytes[0]);
+        assertEquals("getUser", serializer.deserialize(bytes, RpcRequest.class).getMethodName());
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testUnknownFormat() throws IOException {
+        serializer.deserialize(new ByteArrayInputStream(new byte[]{2}), RpcRequest.class);
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testUnknownTag() throws IOException {
+        // FAST，方法ID 1，1个参数，类型标记99
+        serializer.deserialize(new ByteArrayInputStream(new byte[]{FAST, 1, 1, 99}), RpcRequest.class);
+    }
+
+    @Test
+    public void testTruncatedLength() throws IOException {
+        // 字符串声明10字节，只有3字节
+        assertEof(new byte[]{FAST, 1, 1, 10, 10, 'a', 'b', 'c'});
+        // byte[]声明2字节，数据为空
+        assertEof(new byte[]{FAST, 1, 1, 11, 2});
+        // 参数个数大于剩余字节数
+        assertEof(new byte[]{FAST, 1, 5, 0, 0});
+    }
+
+    @Test
+    public void testOversizedLength() throws IOException {
+        // 长度为Integer.MAX_VALUE的varint，不按该长度分配内存
+        byte[] maxInt = {(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07};
+        byte[][] data = {
+                concat(new byte[]{FAST, 1}, maxInt),
+                concat(new byte[]{FAST, 1, 1, 11}, maxInt),
+                concat(new byte[]{FAST, 1, 1, 10}, maxInt)
+        };
+        for (byte[] bytes : data) {
+            for (InputStream in : new InputStream[]{new ByteArrayInputStream(bytes), new ByteBufInputStream(Unpooled.wrappedBuffer(bytes)),
+                    new BufferedInputStream(new ByteArrayInputStream(bytes))}) {
+                try{
+                    serializer.deserialize(in, RpcRequest.class);
+                    fail();
+                }catch (StreamCorruptedException e){
+                    // 超过长度上限
+                }
+            }
+        }
+    }
+
+    private void assertEof(byte[] bytes) throws IOException {
+        for (InputStream in : new InputStream[]{new ByteArrayInputStream(bytes), new ByteBufInputStream(Unpooled.wrappedBuffer(bytes))}) {
+            try{
+                serializer.deserialize(in, RpcRequest.class);
+                fail();
+            }catch (EOFException e){
+                // 数据不完整
+            }
+        }
+    }
+
+    private static byte[] concat(byte[] head, byte[] tail){
+        byte[] result = new byte[head.length + tail.length];
+        System.arraycopy(head, 0, result, 0, head.length);
+        System.arraycopy(tail, 0, result, head.length, tail.length);
+        return result;
+    }
+
+    private void assertParameters(Object[] parameters) throws IOException {
+        for (boolean byteBuf : new boolean[]{false, true}) {
+            RpcRequest result = roundTrip(request(parameters), byteBuf);
+            assertEquals(7, (int) result.getMethodId());
+            assertArrayEquals(parameters, result.getParameters());
+        }
+    }
+
+    private RpcRequest roundTrip(RpcRequest request, boolean byteBuf) throws IOException {
+        if(!byteBuf){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            serializer.serialize(request, out);
+            assertEquals(FAST, out.toByteArray()[0]);
+            return serializer.deserialize(new ByteArrayInputStream(out.toByteArray()), RpcRequest.class);
+        }
+        ByteBuf buffer = Unpooled.buffer(16);
+        try{
+            serializer.serialize(request, new ByteBufOutputStream(buffer));
+            assertEquals(FAST, buffer.getByte(0));
+            return serializer.deserialize(new ByteBufInputStream(buffer), RpcRequest.class);
+        }finally {
+            buffer.release();
+        }
+    }
+
+    private byte[] serializeToByteBuf(RpcRequest request) throws IOException {
+        ByteBuf buffer = Unpooled.buffer(16);
+        try{
+            serializer.serialize(request, new ByteBufOutputStream(buffer));
+            byte[] bytes = new byte[buffer.readableBytes()];
+            buffer.readBytes(bytes);
+            return bytes;
+        }finally {
+            buffer.release();
+        }
+    }
+
+    private static RpcRequest request(Object... parameters){
+        RpcRequest request = new RpcRequest();
+        request.setMethodId(7);
+        request.setParameters(parameters);
+        return request;
+    }
+
+    private static String repeat(String value, int times){
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < times; i++){
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+
+    public static class User {
+        private long id;
+        private String name;
+
+        public User() {
+        }
+
+        User(long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.jay.rpc.dict;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ *  Zstd字典离线训练工具
+ *  读取样本目录中的样本文件（rpc-core采样写入，格式：连续的 4字节长度 + 样本数据），
+ *  训练出新的字典，写入字典目录，版本号为目录中的最大版本号 + 1
+ *
+ *  用法：DictionaryTrainer {样本目录} {字典目录} [字典大小，默认16KB]
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/11
+ **/
+public class DictionaryTrainer {
+    private static final String DICTIONARY_SUFFIX = ".dict";
+    private static final int DEFAULT_DICTIONARY_SIZE = 16 * 1024;
+    /**
+     * 与ZstdDictCompressor使用相同的压缩级别评估效果
+     */
+    private static final int LEVEL = 3;
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2){
+            System.err.println("usage: DictionaryTrainer <sample-dir> <dictionary-dir> [dictionary-size]");
+            System.exit(1);
+        }
+        Path sampleDir = Paths.get(args[0]);
+        Path dictionaryDir = Paths.get(args[1]);
+        int dictionarySize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_DICTIONARY_SIZE;
+
+        List<byte[]> samples = readSamples(sampleDir);
+        if(samples.isEmpty()){
+            System.err.println("no samples found in " + sampleDir);
+            System.exit(1);
+        }
+        long totalSize = 0;
+        for(byte[] sample : samples){
+            totalSize += sample.length;
+        }
+        // 训练
+        ZstdDictTrainer trainer = new ZstdDictTrainer((int) Math.min(totalSize, Integer.MAX_VALUE), dictionarySize);
+        for(byte[] sample : samples){
+            if(!trainer.addSample(sample)){
+                break;
+            }
+        }
+        byte[] dictionary = trainer.trainSamples();
+
+        // 写入新版本
+        Files.createDirectories(dictionaryDir);
+        int version = latestVersion(dictionaryDir) + 1;
+        Path file = dictionaryDir.resolve(version + DICTIONARY_SUFFIX);
+        Files.write(file, dictionary);
+        System.out.printf("samples: %d, sample bytes: %d, dictionary: %s (%d bytes)%n", samples.size(), totalSize, file, dictionary.length);
+        printRatio(samples, dictionary);
+    }
+
+    /**
+     * 读取所有样本文件
+     */
+    private static List<byte[]> readSamples(Path dir) throws IOException {
+        List<byte[]> samples = new ArrayList<>();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.bin")){
+            for(Path file : files){
+                try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))){
+                    while(true){
+                        int length;
+                        try{
+                            length = in.readInt();
+                        }catch (EOFException e){
+                            break;
+                        }
+                        byte[] sample = new byte[length];
+                        in.readFully(sample);
+                        samples.add(sample);
+                    }
+                }
+            }
+        }
+        return samples;
+    }
+
+    private static int latestVersion(Path dir) throws IOException {
+        int latest = 0;
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + DICTIONARY_SUFFIX)){
+            for(Path file : files){
+                String name = file.getFileName().toString();
+                latest = Math.max(latest, Integer.parseInt(name.substring(0, name.length() - DICTIONARY_SUFFIX.length())));
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * 对比样本在有无字典时的压缩率
+     */
+    private static void printRatio(List<byte[]> samples, byte[] dictionary){
+        ZstdDictCompress dict = new ZstdDictCompress(dictionary, LEVEL);
+        long original = 0, plain = 0, withDictionary = 0;
+        for(byte[] sample : samples){
+            original += sample.length;
+            plain += Zstd.compress(sample, LEVEL).length;
+            withDictionary += Zstd.compress(sample, dict).length;
+        }
+        System.out.printf("compression ratio without dictionary: %.2f, with dictionary: %.2f%n",
+                (double) original / plain, (double) original / withDictionary);
+    }
+}
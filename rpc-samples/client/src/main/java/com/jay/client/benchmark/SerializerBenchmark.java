@@ -0,0 +1,101 @@
+package com.jay.client.benchmark;
+
+import com.jay.common.enums.SerializerTypeEnum;
+import com.jay.common.extention.ExtensionLoader;
+import com.jay.rpc.entity.RpcRequest;
+import com.jay.rpc.entity.RpcResponse;
+import com.jay.rpc.transport.serialize.Serializer;
+import com.jay.sample.api.UserService;
+import com.jay.sample.api.dto.UserDTO;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.io.IOException;
+
+/**
+ * <p>
+ *  序列化方式对比
+ *  使用示例服务的请求和响应（包括协商方法ID后的请求、基本类型返回值），按编解码器中的方式序列化到ByteBuf、再从ByteBuf反序列化，
+ *  输出每种序列化方式的数据大小和平均耗时
+ *
+ *  运行：直接执行main方法，参数为每轮迭代次数（默认200000）
+ * </p>
+ *
+ * @author Jay
+ * @date 2021/12/12
+ **/
+public class SerializerBenchmark {
+    private static final int WARMUP_ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        RpcRequest request = RpcRequest.builder()
+                .targetClass(UserService.class)
+                .methodName("getUser")
+                .parameterTypes(new Class[]{String.class})
+                .parameters(new Object[]{"jay"})
+                .build();
+        // 连接协商过方法表后的请求，只有方法ID和参数
+        RpcRequest compactRequest = RpcRequest.builder()
+                .methodId(0)
+                .parameters(new Object[]{"jay"})
+                .build();
+        UserDTO user = new UserDTO();
+        user.setUserId(10086L);
+        user.setUsername("jay");
+        user.setPwd("123456");
+        RpcResponse response = RpcResponse.builder()
+                .returnType(UserDTO.class)
+                .result(user)
+                .build();
+        RpcResponse compactResponse = RpcResponse.builder()
+                .result(10086L)
+                .build();
+
+        System.out.printf("%-12s %-16s %8s %16s %16s%n", "serializer", "message", "bytes", "serialize ns", "deserialize ns");
+        for(SerializerTypeEnum type : SerializerTypeEnum.values()){
+            Serializer serializer = ExtensionLoader.getExtensionLoader(Serializer.class).getExtension(type.type);
+            run(serializer, type.type, "request", request, RpcRequest.class, iterations);
+            run(serializer, type.type, "response", response, RpcResponse.class, iterations);
+            run(serializer, type.type, "compact-request", compactRequest, RpcRequest.class, iterations);
+            run(serializer, type.type, "long-response", compactResponse, RpcResponse.class, iterations);
+        }
+    }
+
+    private static <T> void run(Serializer serializer, String name, String message, T object, Class<T> clazz, int iterations) throws IOException {
+        ByteBuf buffer = PooledByteBufAllocator.DEFAULT.buffer(1024);
+        try{
+            for(int i = 0; i < WARMUP_ROUNDS; i++){
+                measure(serializer, buffer, object, clazz, iterations);
+            }
+            long[] result = measure(serializer, buffer, object, clazz, iterations);
+            buffer.clear();
+            serializer.serialize(object, new ByteBufOutputStream(buffer));
+            System.out.printf("%-12s %-16s %8d %16d %16d%n", name, message, buffer.readableBytes(),
+                    result[0] / iterations, result[1] / iterations);
+        }finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * @return 序列化总耗时，反序列化总耗时，纳秒
+     */
+    private static <T> long[] measure(Serializer serializer, ByteBuf buffer, T object, Class<T> clazz, int iterations) throws IOException {
+        long serializeNanos = 0;
+        long deserializeNanos = 0;
+        for(int i = 0; i < iterations; i++){
+            buffer.clear();
+            long start = System.nanoTime();
+            serializer.serialize(object, new ByteBufOutputStream(buffer));
+            long serialized = System.nanoTime();
+            serializer.deserialize(new ByteBufInputStream(buffer), clazz);
+            long end = System.nanoTime();
+            serializeNanos += serialized - start;
+            deserializeNanos += end - serialized;
+        }
+        return new long[]{serializeNanos, deserializeNanos};
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * <p>
@@ -27,4 +28,10 @@ public class TestController {
         UserService userService = rpcProxy.create(UserService.class, "server-application");
         return userService.getUser(name);
     }
+
+    @GetMapping("/testAsync")
+    public CompletableFuture<UserDTO> testAsync(@RequestParam("name") String name){
+        UserService userService = rpcProxy.create(UserService.class, "server-application");
+        return userService.getUserAsync(name);
+    }
 }
@@ -2,6 +2,10 @@ package com.jay.sample.api;
 
 import com.jay.sample.api.dto.UserDTO;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface UserService {
     UserDTO getUser(String name);
+
+    CompletableFuture<UserDTO> getUserAsync(String name);
 }
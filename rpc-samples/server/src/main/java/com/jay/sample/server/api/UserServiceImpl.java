@@ -4,6 +4,8 @@ import com.jay.rpc.annotation.RpcService;
 import com.jay.sample.api.UserService;
 import com.jay.sample.api.dto.UserDTO;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * <p>
  *
@@ -22,4 +24,9 @@ public class UserServiceImpl implements UserService {
         userDTO.setPwd(name + "123");
         return userDTO;
     }
+
+    @Override
+    public CompletableFuture<UserDTO> getUserAsync(String name) {
+        return CompletableFuture.supplyAsync(() -> getUser(name));
+    }
 }